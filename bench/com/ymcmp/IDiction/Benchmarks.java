@@ -0,0 +1,235 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 plank.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ymcmp.IDiction;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+import javax.swing.JEditorPane;
+
+/**
+ * Benchmarks for the lookup, translation and load paths over synthetic
+ * vocabularies. Run with {@code ant bench}, or directly:
+ *
+ * <pre>
+ * java -cp build/classes:build/bench com.ymcmp.IDiction.Benchmarks
+ *     [-sizes 1000,10000,...] [-impl plain|compact|concurrent]
+ *     [-w WARMUPS] [-i ITERATIONS] [-t MILLIS] [-o results.json] [FILTER]
+ * </pre>
+ *
+ * Only benchmarks whose name contains FILTER are run. Ten million entries
+ * need a few gigabytes of heap.
+ *
+ * @author plank
+ */
+final class Benchmarks {
+
+    // Inputs are cycled through so the lookups do not all hit one bucket
+    private static final int SAMPLES = 4096;
+    private static final int SENTENCE_WORDS = 12;
+    // As long as the note the window shows under every translation
+    private static final String NOTE = "Words with ` ' do not exist. Add them under Words, or mail about it...";
+
+    private Benchmarks() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<Integer> sizes = new ArrayList<>();
+        String impl = "plain";
+        int warmups = 5;
+        int iterations = 5;
+        int millis = 500;
+        Path out = null;
+        String filter = "";
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+            case "-sizes":
+                for (String size : args[++i].split(",")) {
+                    sizes.add(Integer.parseInt(size.trim()));
+                }
+                break;
+            case "-impl":
+                impl = args[++i];
+                break;
+            case "-w":
+                warmups = Integer.parseInt(args[++i]);
+                break;
+            case "-i":
+                iterations = Integer.parseInt(args[++i]);
+                break;
+            case "-t":
+                millis = Integer.parseInt(args[++i]);
+                break;
+            case "-o":
+                out = Paths.get(args[++i]);
+                break;
+            default:
+                filter = args[i];
+            }
+        }
+        if (sizes.isEmpty()) {
+            Collections.addAll(sizes, 1000, 10000, 100000, 1000000);
+        }
+
+        Harness harness = new Harness(warmups, iterations, millis);
+        if ("initRead".contains(filter)) {
+            harness.measure("initRead", Main.initRead("Library.properties").size(), (i) -> Main.initRead("Library.properties"));
+        }
+        for (int size : sizes) {
+            run(harness, impl, size, filter);
+        }
+        if (out != null) {
+            harness.writeJson(out);
+            System.out.println("Results written to " + out);
+        }
+    }
+
+    private static void run(Harness harness, String impl, int size, String filter) {
+        Random random = new Random(size);
+        Dictionary<String, String> dict = vocabulary(impl, size, random);
+        String[] hitKeys = new String[SAMPLES];
+        String[] hitValues = new String[SAMPLES];
+        String[] missKeys = new String[SAMPLES];
+        String[] missValues = new String[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            int hit = random.nextInt(size);
+            int miss = size + random.nextInt(size);
+            hitKeys[i] = english(hit);
+            hitValues[i] = pjarg(hit);
+            missKeys[i] = english(miss);
+            missValues[i] = pjarg(miss);
+        }
+        int mask = SAMPLES - 1;
+
+        if ("getValues.hit".contains(filter)) {
+            harness.measure("getValues.hit", size, (i) -> dict.getValues(hitKeys[i & mask]));
+        }
+        if ("getValues.miss".contains(filter)) {
+            harness.measure("getValues.miss", size, (i) -> dict.getValues(missKeys[i & mask]));
+        }
+        if ("getKeys.hit".contains(filter)) {
+            harness.measure("getKeys.hit", size, (i) -> dict.getKeys(hitValues[i & mask]));
+        }
+        if ("getKeys.miss".contains(filter)) {
+            harness.measure("getKeys.miss", size, (i) -> dict.getKeys(missValues[i & mask]));
+        }
+        if ("containsKey.hit".contains(filter)) {
+            harness.measure("containsKey.hit", size, (i) -> dict.containsKey(hitKeys[i & mask]));
+        }
+        if ("containsKey.miss".contains(filter)) {
+            harness.measure("containsKey.miss", size, (i) -> dict.containsKey(missKeys[i & mask]));
+        }
+        if ("translate".contains(filter)) {
+            Translator translator = new Translator(dict, Translator.Direction.ENGLISH_TO_PJARG);
+            String[] sentences = new String[SAMPLES];
+            for (int i = 0; i < SAMPLES; i++) {
+                sentences[i] = sentence(size, random);
+            }
+            // What the window does for a query the cache misses: translate into a reused
+            // buffer, then update the description pane in place, here one never shown
+            StringBuilder buffer = new StringBuilder();
+            JEditorPane pane = new JEditorPane("text/html", "");
+            harness.measure("translate", size, (i) -> {
+                buffer.setLength(0);
+                translator.translate(sentences[i & mask], buffer);
+                HtmlRenderer.update(pane, sentences[i & mask], buffer.toString(), NOTE);
+                return pane;
+            });
+        }
+        if (impl.equals("plain") && "sort+removeDupByKey".contains(filter)) {
+            // A tenth of the entries repeat a key, in random order
+            Supplier<Dictionary<String, String>> unsorted = () -> {
+                Random shuffle = new Random(size);
+                List<Map.Entry<String, String>> entries = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    int word = i % 10 == 9 ? shuffle.nextInt(size) : i;
+                    entries.add(new SimpleImmutableEntry<>(english(word), pjarg(i)));
+                }
+                Collections.shuffle(entries, shuffle);
+                Dictionary<String, String> copy = new Dictionary<>();
+                copy.addAll(entries);
+                return copy;
+            };
+            harness.measureOnce("sort+removeDupByKey", size, unsorted, (copy) -> {
+                copy.sort();
+                return copy.removeDupByKey();
+            });
+        }
+    }
+
+    static Dictionary<String, String> vocabulary(String impl, int size, Random random) {
+        List<Map.Entry<String, String>> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            entries.add(new SimpleImmutableEntry<>(english(i), pjarg(i)));
+        }
+        Collections.shuffle(entries, random);
+        Dictionary<String, String> dict;
+        switch (impl) {
+        case "plain":
+            dict = new Dictionary<>();
+            break;
+        case "compact":
+            dict = new CompactDictionary();
+            break;
+        case "concurrent":
+            return new ConcurrentDictionary<>(entries);
+        default:
+            throw new IllegalArgumentException("Unknown dictionary " + impl);
+        }
+        dict.addAll(entries);
+        return dict;
+    }
+
+    // Mostly known words with some plurals and unknown words, as people type them
+    static String sentence(int size, Random random) {
+        StringBuilder sb = new StringBuilder();
+        for (int w = 0; w < SENTENCE_WORDS; w++) {
+            int roll = random.nextInt(10);
+            String word = english(roll == 0 ? size + random.nextInt(size) : random.nextInt(size));
+            sb.append(w == 0 ? Translator.stmtCase(word) : word).append(roll == 1 ? "s" : "").append(w == SENTENCE_WORDS - 1 ? "." : " ");
+        }
+        return sb.toString();
+    }
+
+    // Letters only, so every word is one token: 0 -> "ba", 1 -> "bb", ...
+    static String english(int i) {
+        StringBuilder sb = new StringBuilder();
+        do {
+            sb.append((char) ('a' + i % 26));
+            i /= 26;
+        } while (i > 0);
+        return sb.insert(0, 'b').toString();
+    }
+
+    private static String pjarg(int i) {
+        return Translator.stmtCase(english(i)) + "j";
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 plank.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ymcmp.IDiction;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Stress test of {@link ConcurrentDictionary}: reader threads look up and
+ * iterate while one writer keeps publishing new versions of the whole
+ * vocabulary and adding and removing a probe entry in between.
+ *
+ * Every version {@code v} holds {@code size - v % 16} entries whose values
+ * are all tagged {@code v}, plus at most one probe. A read that sees two
+ * tags, the wrong number of entries for its tag, or an older version than
+ * the same thread saw before is torn. The first torn read or exception,
+ * such as a {@link java.util.ConcurrentModificationException}, is printed
+ * and the process exits with status 1.
+ *
+ * <pre>
+ * java -cp build/classes:build/bench com.ymcmp.IDiction.ConcurrentStress
+ *     [-r READERS] [-d SECONDS] [-size ENTRIES] [-impl concurrent|plain]
+ * </pre>
+ *
+ * {@code -impl plain} runs the same test on a plain {@link Dictionary},
+ * which is expected to fail.
+ *
+ * @author plank
+ */
+final class ConcurrentStress {
+
+    private static final String PROBE = "probe";
+    private static final int SIZE_STEPS = 16;
+
+    private final Dictionary<String, String> dict;
+    private final int size;
+    private final LongAdder reads = new LongAdder();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private volatile boolean running = true;
+
+    private ConcurrentStress(Dictionary<String, String> dict, int size) {
+        this.dict = dict;
+        this.size = size;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int readers = 8;
+        int seconds = 5;
+        int size = 10000;
+        String impl = "concurrent";
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+            case "-r":
+                readers = Integer.parseInt(args[++i]);
+                break;
+            case "-d":
+                seconds = Integer.parseInt(args[++i]);
+                break;
+            case "-size":
+                size = Integer.parseInt(args[++i]);
+                break;
+            case "-impl":
+                impl = args[++i];
+                break;
+            default:
+                System.err.println("Unknown option " + args[i]);
+                System.exit(2);
+            }
+        }
+
+        ConcurrentStress test;
+        Consumer<List<Map.Entry<String, String>>> publish;
+        if (impl.equals("plain")) {
+            Dictionary<String, String> plain = new Dictionary<>();
+            plain.addAll(test(size, 0));
+            test = new ConcurrentStress(plain, size);
+            publish = (entries) -> {
+                plain.clear();
+                plain.addAll(entries);
+            };
+        } else {
+            ConcurrentDictionary<String, String> concurrent = new ConcurrentDictionary<>(test(size, 0));
+            test = new ConcurrentStress(concurrent, size);
+            publish = (entries) -> concurrent.update((copy) -> {
+                copy.clear();
+                copy.addAll(entries);
+            });
+        }
+
+        Thread[] workers = new Thread[readers];
+        for (int i = 0; i < readers; i++) {
+            workers[i] = new Thread(test::reader, "reader-" + i);
+            workers[i].start();
+        }
+        long versions = 0;
+        long deadline = System.nanoTime() + seconds * 1000000000L;
+        Map.Entry<String, String> probe = new SimpleImmutableEntry<>(PROBE, PROBE);
+        try {
+            while (System.nanoTime() < deadline && test.failure.get() == null) {
+                publish.accept(test(size, ++versions));
+                test.dict.add(probe);
+                test.dict.remove(probe);
+            }
+        } catch (RuntimeException ex) {
+            test.failure.compareAndSet(null, ex);
+        }
+        test.running = false;
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        System.out.printf(Locale.ROOT, "%s, %d entries, %d readers: %d versions published, %d reads checked%n",
+                impl, size, readers, versions, test.reads.sum());
+        Throwable failed = test.failure.get();
+        if (failed != null) {
+            System.out.println("FAILED");
+            failed.printStackTrace(System.out);
+            System.exit(1);
+        }
+        System.out.println("OK, no torn reads");
+    }
+
+    // The entries of one version
+    private static List<Map.Entry<String, String>> test(int size, long version) {
+        int count = size - (int) (version % SIZE_STEPS);
+        List<Map.Entry<String, String>> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            entries.add(new SimpleImmutableEntry<>("w" + i, version + "/" + i));
+        }
+        return entries;
+    }
+
+    private void reader() {
+        long seen = 0;
+        int round = 0;
+        try {
+            while (running && failure.get() == null) {
+                switch (round++ % 4) {
+                case 0:
+                    seen = check(dict::iterator, seen);
+                    break;
+                case 1:
+                    List<Map.Entry<String, String>> streamed = new ArrayList<>();
+                    dict.stream().forEach(streamed::add);
+                    seen = check(streamed, seen);
+                    break;
+                case 2:
+                    List<Map.Entry<String, String>> values = new ArrayList<>();
+                    for (String value : dict.getValues()) {
+                        values.add(new SimpleImmutableEntry<>(value.equals(PROBE) ? PROBE : "", value));
+                    }
+                    seen = check(values, seen);
+                    break;
+                default:
+                    for (int i = 0; i < 64; i++) {
+                        List<String> found = dict.getValues("w" + i);
+                        if (found == null || found.size() != 1 || !found.get(0).endsWith("/" + i)) {
+                            throw new AssertionError("w" + i + " looked up as " + found);
+                        }
+                    }
+                }
+                reads.increment();
+            }
+        } catch (Throwable ex) {
+            failure.compareAndSet(null, ex);
+        }
+    }
+
+    // Checks one read of the whole vocabulary and returns its version
+    private long check(Iterable<Map.Entry<String, String>> read, long seen) {
+        long version = -1;
+        int count = 0;
+        int probes = 0;
+        for (Map.Entry<String, String> entry : read) {
+            if (entry.getKey().equals(PROBE)) {
+                probes++;
+                continue;
+            }
+            String value = entry.getValue();
+            long tag = Long.parseLong(value.substring(0, value.indexOf('/')));
+            if (version < 0) {
+                version = tag;
+            } else if (tag != version) {
+                throw new AssertionError("Torn read: versions " + version + " and " + tag + " in one read");
+            }
+            count++;
+        }
+        if (version < 0) {
+            throw new AssertionError("Torn read: no entries, " + probes + " probes");
+        }
+        int expected = size - (int) (version % SIZE_STEPS);
+        if (count != expected || probes > 1) {
+            throw new AssertionError("Torn read: version " + version + " has " + count + " entries and "
+                    + probes + " probes, expected " + expected + " and at most 1");
+        }
+        if (version < seen) {
+            throw new AssertionError("Went back from version " + seen + " to " + version);
+        }
+        return version;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 plank.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ymcmp.IDiction;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A small benchmark runner in the spirit of JMH, without the dependency.
+ * Every benchmark is warmed up, then measured over several timed
+ * iterations; the score is the mean time per operation with a 99.9%
+ * confidence error. Results are written in the JSON layout JMH uses, so the
+ * same tools can compare them across builds.
+ *
+ * @author plank
+ */
+final class Harness {
+
+    /**
+     * One operation. {@code i} counts up so operations can vary their input.
+     */
+    interface Op {
+
+        Object run(int i);
+    }
+
+    private final int warmups;
+    private final int iterations;
+    private final long iterationNanos;
+    private final List<String> results = new ArrayList<>();
+    // Keeps results alive so the JIT cannot drop the work that made them
+    private volatile Object sink;
+
+    Harness(int warmups, int iterations, long iterationMillis) {
+        this.warmups = warmups;
+        this.iterations = iterations;
+        this.iterationNanos = iterationMillis * 1000000L;
+    }
+
+    /**
+     * Measures {@code op} by running it repeatedly for each iteration.
+     */
+    void measure(String name, int size, Op op) {
+        for (int w = 0; w < warmups; w++) {
+            timed(op);
+        }
+        double[] scores = new double[iterations];
+        for (int it = 0; it < iterations; it++) {
+            scores[it] = timed(op);
+        }
+        report(name, "avgt", size, scores);
+    }
+
+    /**
+     * Measures operations too slow to repeat, such as sorting a whole
+     * dictionary. {@code setup} builds a fresh input for every iteration
+     * outside the timed section.
+     */
+    <T> void measureOnce(String name, int size, Supplier<T> setup, Function<T, Object> op) {
+        double[] scores = new double[iterations];
+        for (int it = -warmups; it < iterations; it++) {
+            T input = setup.get();
+            long start = System.nanoTime();
+            sink = op.apply(input);
+            long elapsed = System.nanoTime() - start;
+            if (it >= 0) {
+                scores[it] = elapsed;
+            }
+        }
+        report(name, "ss", size, scores);
+    }
+
+    private double timed(Op op) {
+        long ops = 0;
+        int batch = 1;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < batch; i++) {
+                sink = op.run((int) ops + i);
+            }
+            ops += batch;
+            elapsed = System.nanoTime() - start;
+            if (batch < (1 << 20)) {
+                batch <<= 1;
+            }
+        } while (elapsed < iterationNanos);
+        return (double) elapsed / ops;
+    }
+
+    private void report(String name, String mode, int size, double[] scores) {
+        double mean = 0;
+        for (double score : scores) {
+            mean += score;
+        }
+        mean /= scores.length;
+        double var = 0;
+        for (double score : scores) {
+            var += (score - mean) * (score - mean);
+        }
+        double error = scores.length > 1 ? 3.291 * Math.sqrt(var / (scores.length - 1)) / Math.sqrt(scores.length) : Double.NaN;
+        System.out.printf(Locale.ROOT, "%-28s %10d %14.1f +- %10.1f ns/op%n", name, size, mean, error);
+
+        StringBuilder raw = new StringBuilder();
+        for (double score : scores) {
+            raw.append(raw.length() == 0 ? "" : ", ").append(number(score));
+        }
+        results.add(String.format(Locale.ROOT, "    {\n"
+                + "        \"benchmark\" : \"%s\",\n"
+                + "        \"mode\" : \"%s\",\n"
+                + "        \"warmupIterations\" : %d,\n"
+                + "        \"measurementIterations\" : %d,\n"
+                + "        \"params\" : { \"size\" : \"%d\" },\n"
+                + "        \"primaryMetric\" : {\n"
+                + "            \"score\" : %s,\n"
+                + "            \"scoreError\" : %s,\n"
+                + "            \"scoreUnit\" : \"ns/op\",\n"
+                + "            \"rawData\" : [ [ %s ] ]\n"
+                + "        }\n"
+                + "    }", name, mode, warmups, iterations, size, number(mean), number(error), raw));
+    }
+
+    private static String number(double d) {
+        return Double.isNaN(d) ? "\"NaN\"" : String.format(Locale.ROOT, "%.3f", d);
+    }
+
+    void writeJson(Path out) throws IOException {
+        Path dir = out.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        try (Writer w = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+            w.write("[\n" + String.join(",\n", results) + "\n]\n");
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 plank.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ymcmp.IDiction;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed loop load test of {@link TranslationServer} over loopback. Every
+ * client thread sends a request, waits for the answer and sends the next
+ * one over the same kept-alive connection. Reports requests per second and
+ * latency percentiles of the answered requests, and how many were shed.
+ *
+ * <pre>
+ * java -cp build/classes:build/bench com.ymcmp.IDiction.LoadTest
+ *     [-c CLIENTS] [-d SECONDS] [-w WARMUP_SECONDS] [-size ENTRIES]
+ *     [-batch SENTENCES] [-j THREADS] [-q QUEUED] [-o results.json]
+ *     [translate|lookup|complete|mix]
+ * </pre>
+ *
+ * @author plank
+ */
+final class LoadTest {
+
+    // Half translations, the rest single word lookups and completions
+    private static final String[] MIX = {"translate", "translate", "translate", "translate", "translate",
+        "lookup", "lookup", "lookup", "complete", "complete"};
+
+    private final String base;
+    private final int size;
+    private final int batch;
+    private final String path;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder shed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile boolean recording;
+    private volatile boolean running = true;
+
+    private LoadTest(String base, int size, int batch, String path) {
+        this.base = base;
+        this.size = size;
+        this.batch = batch;
+        this.path = path;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = 16;
+        int seconds = 10;
+        int warmup = 3;
+        int size = 100000;
+        int batch = 8;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int queued = 256;
+        Path out = null;
+        String path = "mix";
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+            case "-c":
+                clients = Integer.parseInt(args[++i]);
+                break;
+            case "-d":
+                seconds = Integer.parseInt(args[++i]);
+                break;
+            case "-w":
+                warmup = Integer.parseInt(args[++i]);
+                break;
+            case "-size":
+                size = Integer.parseInt(args[++i]);
+                break;
+            case "-batch":
+                batch = Integer.parseInt(args[++i]);
+                break;
+            case "-j":
+                threads = Integer.parseInt(args[++i]);
+                break;
+            case "-q":
+                queued = Integer.parseInt(args[++i]);
+                break;
+            case "-o":
+                out = Paths.get(args[++i]);
+                break;
+            default:
+                path = args[i];
+            }
+        }
+
+        TranslationServer server = new TranslationServer(Benchmarks.vocabulary("plain", size, new Random(size)), threads, queued);
+        InetSocketAddress address = server.start(new InetSocketAddress("127.0.0.1", 0));
+        LoadTest test = new LoadTest("http://127.0.0.1:" + address.getPort(), size, batch, path);
+        Thread[] workers = new Thread[clients];
+        for (int i = 0; i < clients; i++) {
+            long seed = i;
+            workers[i] = new Thread(() -> test.client(new Random(seed)), "client-" + i);
+            workers[i].start();
+        }
+        Thread.sleep(warmup * 1000L);
+        long shedBefore = server.getShed();
+        test.recording = true;
+        long start = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        test.recording = false;
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        long shedDuring = server.getShed() - shedBefore;
+        test.running = false;
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        server.stop(0);
+
+        LatencyHistogram h = test.latency;
+        double rps = h.count() / elapsed;
+        System.out.printf(Locale.ROOT, "%s, %d entries, %d clients, %d server threads, batch %d%n", path, size, clients, threads, batch);
+        System.out.printf(Locale.ROOT, "%.0f req/s, p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms%n", rps,
+                h.percentile(50) / 1e6, h.percentile(90) / 1e6, h.percentile(99) / 1e6, h.percentile(99.9) / 1e6, h.max() / 1e6);
+        System.out.printf(Locale.ROOT, "%d answered, %d shed (503), %d failed%n", h.count(), shedDuring, test.failed.sum());
+        if (out != null) {
+            Files.createDirectories(out.toAbsolutePath().getParent());
+            try (Writer w = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+                w.write(String.format(Locale.ROOT, "{\n"
+                        + "    \"path\" : \"%s\",\n"
+                        + "    \"size\" : %d,\n"
+                        + "    \"clients\" : %d,\n"
+                        + "    \"threads\" : %d,\n"
+                        + "    \"batch\" : %d,\n"
+                        + "    \"requestsPerSecond\" : %.1f,\n"
+                        + "    \"latencyMillis\" : { \"p50\" : %.3f, \"p90\" : %.3f, \"p99\" : %.3f, \"p99.9\" : %.3f, \"max\" : %.3f },\n"
+                        + "    \"answered\" : %d,\n"
+                        + "    \"shed\" : %d,\n"
+                        + "    \"failed\" : %d\n"
+                        + "}\n", path, size, clients, threads, batch, rps,
+                        h.percentile(50) / 1e6, h.percentile(90) / 1e6, h.percentile(99) / 1e6, h.percentile(99.9) / 1e6, h.max() / 1e6,
+                        h.count(), shedDuring, test.failed.sum()));
+            }
+            System.out.println("Results written to " + out);
+        }
+    }
+
+    private void client(Random random) {
+        while (running) {
+            String kind = path.equals("mix") ? MIX[random.nextInt(MIX.length)] : path;
+            long started = System.nanoTime();
+            int status;
+            try {
+                status = request(kind, random);
+            } catch (IOException ex) {
+                failed.increment();
+                continue;
+            }
+            long nanos = System.nanoTime() - started;
+            if (!recording) {
+                continue;
+            }
+            if (status == 200) {
+                latency.record(nanos);
+            } else if (status != 503) {
+                failed.increment();
+            }
+        }
+    }
+
+    private int request(String kind, Random random) throws IOException {
+        HttpURLConnection conn;
+        switch (kind) {
+        case "translate":
+            conn = (HttpURLConnection) new URL(base + "/translate").openConnection();
+            conn.setRequestMethod("POST");
+            conn.setDoOutput(true);
+            conn.setRequestProperty("Content-Type", "text/plain; charset=utf-8");
+            StringBuilder body = new StringBuilder();
+            for (int i = 0; i < batch; i++) {
+                body.append(Benchmarks.sentence(size, random)).append('\n');
+            }
+            byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+            conn.setFixedLengthStreamingMode(bytes.length);
+            try (OutputStream os = conn.getOutputStream()) {
+                os.write(bytes);
+            }
+            break;
+        case "lookup":
+            conn = (HttpURLConnection) new URL(base + "/lookup?word=" + Benchmarks.english(random.nextInt(2 * size))).openConnection();
+            break;
+        case "complete":
+            String word = Benchmarks.english(random.nextInt(size));
+            String prefix = URLEncoder.encode(word.substring(0, Math.min(3, word.length())), "UTF-8");
+            conn = (HttpURLConnection) new URL(base + "/complete?limit=10&prefix=" + prefix).openConnection();
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown request " + kind);
+        }
+        int status = conn.getResponseCode();
+        // Reading the whole answer returns the connection to the keep-alive cache
+        try (InputStream in = status < 400 ? conn.getInputStream() : conn.getErrorStream()) {
+            if (in != null) {
+                byte[] buf = new byte[8192];
+                while (in.read(buf) != -1) {
+                    // drain
+                }
+            }
+        }
+        return status;
+    }
+}
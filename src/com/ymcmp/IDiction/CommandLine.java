@@ -0,0 +1,346 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 plank.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ymcmp.IDiction;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs the dictionary without a display, using the same {@link Dictionary}
+ * and {@link Translator} as the window. Input and output are UTF-8 and
+ * buffered; text is translated line by line as it streams through, so
+ * inputs of any size use constant memory.
+ *
+ * @author plank
+ */
+public class CommandLine {
+
+    static final int OK = 0;
+    static final int FAILED = 1;
+    static final int USAGE = 2;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int CHUNK_LINES = 2048;
+    private static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_QUEUED = 256;
+    private static final String HELP = "Usage:\n"
+            + "  translate [-p] [-s] [-j THREADS] [-i FILE]... [TEXT...]\n"
+            + "      Translates TEXT, else every FILE, else stdin, line by line.\n"
+            + "      -p  from Pjarg to English instead of English to Pjarg\n"
+            + "      -s  suggest close words for unknown ones\n"
+            + "      -j  translate chunks of lines on THREADS threads, in order\n"
+            + "  lookup WORD...\n"
+            + "      Prints 'word -> pjarg' and 'word <- english' for every translation.\n"
+            + "  dump\n"
+            + "      Prints every entry as english=pjarg.\n"
+            + "  serve [-j THREADS] [-q QUEUED] [[HOST:]PORT]\n"
+            + "      Serves lookups and translations as JSON over HTTP until killed,\n"
+            + "      on 127.0.0.1:8080 by default. Past THREADS busy workers and QUEUED\n"
+            + "      waiting requests, new requests get 503.\n"
+            + "  add ENGLISH PJARG\n"
+            + "      Keeps a word of your own, looked up before the vocabulary.\n"
+            + "  remove ENGLISH PJARG\n"
+            + "      Forgets a word added with add or import.\n"
+            + "  import FILE...\n"
+            + "      Adds every english=pjarg entry of the .properties FILEs as your own.\n"
+            + "  help";
+
+    private CommandLine() {
+    }
+
+    /**
+     * @param args the command followed by its arguments
+     * @param dict
+     * @param user the user's words, writable if {@link #changesWords} said
+     * so, or {@code null} if they could not be opened
+     * @return the process exit status
+     */
+    public static int run(String[] args, Dictionary<String, String> dict, UserVocabulary user) {
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        try {
+            int status;
+            switch (args.length == 0 ? "help" : args[0]) {
+            case "translate":
+                status = translate(args, dict, out);
+                break;
+            case "lookup":
+                status = lookup(args, dict, out);
+                break;
+            case "dump":
+                status = dump(dict, out);
+                break;
+            case "serve":
+                status = serve(args, dict);
+                break;
+            case "add":
+            case "remove":
+            case "import":
+                status = changeWords(args, user);
+                break;
+            case "help":
+            case "-h":
+            case "--help":
+                System.out.println(HELP);
+                return args.length == 0 ? USAGE : OK;
+            default:
+                System.err.println("Unknown command " + args[0]);
+                System.err.println(HELP);
+                return USAGE;
+            }
+            out.flush();
+            return status;
+        } catch (IOException ex) {
+            System.err.println(ex.getMessage());
+            return FAILED;
+        }
+    }
+
+    private static int translate(String[] args, Dictionary<String, String> dict, Writer out) throws IOException {
+        Translator.Direction direction = Translator.Direction.ENGLISH_TO_PJARG;
+        boolean suggest = false;
+        int threads = 0;
+        List<String> files = new ArrayList<>();
+        List<String> words = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+            case "-p":
+                direction = Translator.Direction.PJARG_TO_ENGLISH;
+                break;
+            case "-s":
+                suggest = true;
+                break;
+            case "-j":
+                try {
+                    threads = Integer.parseInt(++i < args.length ? args[i] : "");
+                } catch (NumberFormatException ex) {
+                    return usage("-j needs a thread count");
+                }
+                if (threads < 1) {
+                    return usage("-j needs a thread count");
+                }
+                break;
+            case "-i":
+                if (++i == args.length) {
+                    return usage("-i needs a file");
+                }
+                files.add(args[i]);
+                break;
+            default:
+                words.add(args[i]);
+            }
+        }
+        Translator translator = new Translator(dict, direction);
+        if (suggest) {
+            List<String> known = direction == Translator.Direction.ENGLISH_TO_PJARG ? dict.getKeys() : dict.getValues();
+            translator = translator.withSuggestions(new FuzzyIndex(known));
+        }
+
+        if (!words.isEmpty()) {
+            translator.translate(new StringReader(String.join(" ", words)), out);
+            return OK;
+        }
+        ForkJoinPool pool = threads > 0 ? new ForkJoinPool(threads) : null;
+        try {
+            if (files.isEmpty()) {
+                translate(translator, pool, new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), BUFFER_SIZE), out);
+            }
+            for (String file : files) {
+                try (Reader in = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+                    translate(translator, pool, in, out);
+                }
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+        return OK;
+    }
+
+    private static void translate(Translator translator, ForkJoinPool pool, Reader in, Writer out) throws IOException {
+        if (pool == null) {
+            translator.translate(in, out);
+        } else {
+            new CorpusTranslator(translator, pool, CHUNK_LINES, 4 * pool.getParallelism()).translate(in, out);
+        }
+    }
+
+    private static int lookup(String[] args, Dictionary<String, String> dict, Writer out) throws IOException {
+        if (args.length < 2) {
+            return usage("lookup needs a word");
+        }
+        int status = OK;
+        for (int i = 1; i < args.length; i++) {
+            String word = args[i].toLowerCase();
+            List<String> pjarg = dict.getValues(word);
+            // Pjarg words are stored capitalized, as the translator looks them up
+            List<String> english = dict.getKeys(Translator.stmtCase(word));
+            if (pjarg == null && english == null) {
+                System.err.println("`" + args[i] + "' not found");
+                status = FAILED;
+                continue;
+            }
+            if (pjarg != null) {
+                for (String value : pjarg) {
+                    out.append(word).append(" -> ").append(value).append(System.lineSeparator());
+                }
+            }
+            if (english != null) {
+                for (String key : english) {
+                    out.append(word).append(" <- ").append(key).append(System.lineSeparator());
+                }
+            }
+        }
+        return status;
+    }
+
+    private static int dump(Dictionary<String, String> dict, Writer out) throws IOException {
+        for (int i = 0; i < dict.size(); i++) {
+            Map.Entry<String, String> entry = dict.getIndex(i);
+            out.append(entry.getKey()).append('=').append(entry.getValue()).append(System.lineSeparator());
+        }
+        return OK;
+    }
+
+    /**
+     * @param args
+     * @return whether the command adds or removes the user's words, so needs
+     * them open for writing
+     */
+    static boolean changesWords(String[] args) {
+        return args.length > 0 && (args[0].equals("add") || args[0].equals("remove") || args[0].equals("import"));
+    }
+
+    private static int changeWords(String[] args, UserVocabulary user) throws IOException {
+        List<Map.Entry<String, String>> words = new ArrayList<>();
+        if (args[0].equals("import")) {
+            if (args.length < 2) {
+                return usage("import needs a file");
+            }
+            for (int i = 1; i < args.length; i++) {
+                words.addAll(PropertiesParser.entries(PropertiesParser.read(Paths.get(args[i]).toUri().toURL())));
+            }
+        } else {
+            Map.Entry<String, String> word = args.length == 3 ? UserVocabulary.word(args[1], args[2]) : null;
+            if (word == null) {
+                return usage(args[0] + " needs an English and a Pjarg word");
+            }
+            if (args[0].equals("remove") && user != null && !user.getDictionary().contains(word)) {
+                System.err.println("`" + word.getKey() + "=" + word.getValue() + "' was not added by you");
+                return FAILED;
+            }
+            words.add(word);
+        }
+        if (user == null) {
+            return FAILED;
+        }
+        try {
+            // One batch, so an import is synced once rather than once per word
+            (args[0].equals("remove") ? user.remove(words.get(0)) : user.addAll(words)).join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw ex;
+        } finally {
+            user.close();
+        }
+        System.err.println((args[0].equals("remove") ? "Removed " : "Added ") + words.size()
+                + " words, " + user.getDictionary().size() + " of your own in " + user.getDirectory());
+        return OK;
+    }
+
+    private static int serve(String[] args, Dictionary<String, String> dict) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int queued = DEFAULT_QUEUED;
+        String host = "127.0.0.1";
+        int port = DEFAULT_PORT;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+            case "-j":
+                threads = count(++i < args.length ? args[i] : "");
+                if (threads < 1) {
+                    return usage("-j needs a thread count");
+                }
+                break;
+            case "-q":
+                queued = count(++i < args.length ? args[i] : "");
+                if (queued < 0) {
+                    return usage("-q needs a queue length");
+                }
+                break;
+            default:
+                int colon = args[i].lastIndexOf(':');
+                if (colon >= 0) {
+                    host = args[i].substring(0, colon);
+                }
+                port = count(args[i].substring(colon + 1));
+                if (port < 0 || port > 0xFFFF) {
+                    return usage("Bad port in " + args[i]);
+                }
+            }
+        }
+        TranslationServer server = new TranslationServer(dict, threads, queued);
+        InetSocketAddress address = server.start(new InetSocketAddress(host, port));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+        System.err.println("Serving " + dict.size() + " entries on http://" + address.getHostString() + ":" + address.getPort() + "/");
+        try {
+            new CountDownLatch(1).await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return OK;
+    }
+
+    // A non-negative number, or -1
+    private static int count(String s) {
+        try {
+            return Math.max(Integer.parseInt(s), -1);
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private static int usage(String problem) {
+        System.err.println(problem);
+        System.err.println(HELP);
+        return USAGE;
+    }
+}
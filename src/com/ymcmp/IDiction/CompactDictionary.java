@@ -0,0 +1,553 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 plank.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ymcmp.IDiction;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A {@link Dictionary} for large lexicons. Every distinct word is interned
+ * once as UTF-8 into a single direct (off-heap) byte arena and entries are
+ * stored as pairs of string ids in primitive arrays, so the heap holds no
+ * per-entry objects. Entries and word lists are decoded on demand.
+ *
+ * @author plank
+ */
+public class CompactDictionary extends Dictionary<String, String> {
+
+    private static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Interned strings: arena slice and the first/last entry using it as a key or value
+    private ByteBuffer arena = ByteBuffer.allocateDirect(INITIAL_CAPACITY * 8);
+    private int strCount = 0;
+    private int[] strOff = new int[INITIAL_CAPACITY];
+    private int[] strLen = new int[INITIAL_CAPACITY];
+    private int[] strHash = new int[INITIAL_CAPACITY];
+    private int[] keyHead = new int[INITIAL_CAPACITY];
+    private int[] keyTail = new int[INITIAL_CAPACITY];
+    private int[] valHead = new int[INITIAL_CAPACITY];
+    private int[] valTail = new int[INITIAL_CAPACITY];
+    // Open addressing table of string id + 1 (0 is empty)
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+
+    // Entries: key/value string ids and the next entry sharing the same key/value
+    private int size = 0;
+    private int[] entKey = new int[INITIAL_CAPACITY];
+    private int[] entVal = new int[INITIAL_CAPACITY];
+    private int[] nextByKey = new int[INITIAL_CAPACITY];
+    private int[] nextByVal = new int[INITIAL_CAPACITY];
+
+    @Override
+    public boolean add(Map.Entry<String, String> newEntry) {
+        append(intern(newEntry.getKey()), intern(newEntry.getValue()));
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<Map.Entry<String, String>> col) {
+        col.forEach((newEntry) -> add(newEntry));
+        return !col.isEmpty();
+    }
+
+    @Override
+    public void addAll(Map<String, String> map) {
+        map.entrySet().forEach((newEntry) -> add(newEntry));
+    }
+
+    @Override
+    public boolean remove(Map.Entry<String, String> entry) {
+        return removeAll(Collections.singletonList(entry)) > 0;
+    }
+
+    @Override
+    public int removeAll(Collection<Map.Entry<String, String>> col) {
+        // Count removals per (key id, value id) pair; words never interned cannot be present
+        HashMap<Long, Integer> pending = new HashMap<>();
+        col.forEach((entry) -> {
+            int key = find(entry.getKey());
+            int value = find(entry.getValue());
+            if (key != NONE && value != NONE) {
+                pending.merge(pair(key, value), 1, Integer::sum);
+            }
+        });
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            Long pair = pair(entKey[i], entVal[i]);
+            Integer count = pending.get(pair);
+            if (count != null) {
+                if (count == 1) {
+                    pending.remove(pair);
+                } else {
+                    pending.put(pair, count - 1);
+                }
+                continue;
+            }
+            entKey[kept] = entKey[i];
+            entVal[kept] = entVal[i];
+            kept++;
+        }
+        int removed = size - kept;
+        size = kept;
+        if (removed > 0) {
+            relink();
+        }
+        return removed;
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        int id = find(key);
+        return id != NONE && keyHead[id] != NONE;
+    }
+
+    @Override
+    public boolean containsValue(String value) {
+        int id = find(value);
+        return id != NONE && valHead[id] != NONE;
+    }
+
+    @Override
+    public Map.Entry<String, String> getIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+        return new SimpleImmutableEntry<>(decode(entKey[i]), decode(entVal[i]));
+    }
+
+    @Override
+    public List<Map.Entry<String, String>> getRange(int low, int high) {
+        if (low < 0 || high > size || low > high) {
+            throw new IndexOutOfBoundsException("Range: " + low + ".." + high + ", Size: " + size);
+        }
+        return new AbstractList<Map.Entry<String, String>>() {
+            @Override
+            public Map.Entry<String, String> get(int index) {
+                if (index < 0 || index >= high - low) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (high - low));
+                }
+                return getIndex(low + index);
+            }
+
+            @Override
+            public int size() {
+                return high - low;
+            }
+        };
+    }
+
+    @Override
+    public List<String> getValues() {
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(decode(entVal[i]));
+        }
+        return values;
+    }
+
+    @Override
+    public List<String> getKeys() {
+        List<String> keys = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            keys.add(decode(entKey[i]));
+        }
+        return keys;
+    }
+
+    @Override
+    public List<String> getValues(String key) {
+        int id = find(key);
+        if (id == NONE || keyHead[id] == NONE) {
+            return null;
+        }
+        List<String> values = new ArrayList<>(1);
+        for (int e = keyHead[id]; e != NONE; e = nextByKey[e]) {
+            values.add(decode(entVal[e]));
+        }
+        return Collections.unmodifiableList(values);
+    }
+
+    @Override
+    public List<String> getKeys(String value) {
+        int id = find(value);
+        if (id == NONE || valHead[id] == NONE) {
+            return null;
+        }
+        List<String> keys = new ArrayList<>(1);
+        for (int e = valHead[id]; e != NONE; e = nextByVal[e]) {
+            keys.add(decode(entKey[e]));
+        }
+        return Collections.unmodifiableList(keys);
+    }
+
+    @Override
+    public void sort() {
+        // Decode each key once instead of once per comparison
+        String[] keys = new String[strCount];
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            if (keys[entKey[i]] == null) {
+                keys[entKey[i]] = decode(entKey[i]);
+            }
+            order[i] = i;
+        }
+        Arrays.sort(order, (Integer o1, Integer o2) -> keys[entKey[o1]].compareTo(keys[entKey[o2]]));
+        int[] newKey = new int[entKey.length];
+        int[] newVal = new int[entVal.length];
+        for (int i = 0; i < size; i++) {
+            newKey[i] = entKey[order[i]];
+            newVal[i] = entVal[order[i]];
+        }
+        entKey = newKey;
+        entVal = newVal;
+        relink();
+    }
+
+    @Override
+    public int removeDupByKey() {
+        return removeRepeated(entKey);
+    }
+
+    @Override
+    public int removeDupByValue() {
+        return removeRepeated(entVal);
+    }
+
+    @Override
+    public int removeDuplicates(Function<? super Map.Entry<String, String>, ?> identity, BinaryOperator<Map.Entry<String, String>> merge) {
+        HashMap<Object, Integer> slots = new HashMap<>();
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            Map.Entry<String, String> entry = getIndex(i);
+            Integer slot = slots.putIfAbsent(identity.apply(entry), kept);
+            if (slot == null) {
+                entKey[kept] = entKey[i];
+                entVal[kept] = entVal[i];
+                kept++;
+            } else {
+                Map.Entry<String, String> merged = merge.apply(getIndex(slot), entry);
+                entKey[slot] = intern(merged.getKey());
+                entVal[slot] = intern(merged.getValue());
+            }
+        }
+        return truncate(kept);
+    }
+
+    @Override
+    public void trimToSize() {
+        int arenaSize = arena.position();
+        ByteBuffer trimmed = ByteBuffer.allocateDirect(Math.max(arenaSize, 1));
+        arena.flip();
+        trimmed.put(arena);
+        arena = trimmed;
+        strOff = Arrays.copyOf(strOff, strCount);
+        strLen = Arrays.copyOf(strLen, strCount);
+        strHash = Arrays.copyOf(strHash, strCount);
+        keyHead = Arrays.copyOf(keyHead, strCount);
+        keyTail = Arrays.copyOf(keyTail, strCount);
+        valHead = Arrays.copyOf(valHead, strCount);
+        valTail = Arrays.copyOf(valTail, strCount);
+        entKey = Arrays.copyOf(entKey, size);
+        entVal = Arrays.copyOf(entVal, size);
+        nextByKey = Arrays.copyOf(nextByKey, size);
+        nextByVal = Arrays.copyOf(nextByVal, size);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean contains(Map.Entry<String, String> o) {
+        int key = find(o.getKey());
+        if (key == NONE) {
+            return false;
+        }
+        int value = find(o.getValue());
+        for (int e = keyHead[key]; e != NONE; e = nextByKey[e]) {
+            if (entVal[e] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Object[] toArray() {
+        return getRange(0, size).toArray();
+    }
+
+    @Override
+    public <T> T[] toArray(T[] a) {
+        return getRange(0, size).toArray(a);
+    }
+
+    @Override
+    public void clear() {
+        arena.clear();
+        strCount = 0;
+        size = 0;
+        Arrays.fill(table, 0);
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> iterator() {
+        return getRange(0, size).iterator();
+    }
+
+    @Override
+    public void forEach(Consumer<? super Map.Entry<String, String>> action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(getIndex(i));
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return getRange(0, size).equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return 89 * 7 + getRange(0, size).hashCode();
+    }
+
+    @Override
+    public Stream<Map.Entry<String, String>> stream() {
+        return IntStream.range(0, size).mapToObj(this::getIndex);
+    }
+
+    @Override
+    public Stream<Map.Entry<String, String>> parallelStream() {
+        return stream().parallel();
+    }
+
+    /**
+     * @return bytes of word text held in the off-heap arena
+     */
+    public int arenaSize() {
+        return arena.position();
+    }
+
+    private void append(int key, int value) {
+        if (size == entKey.length) {
+            int cap = Math.max(size * 2, INITIAL_CAPACITY);
+            entKey = Arrays.copyOf(entKey, cap);
+            entVal = Arrays.copyOf(entVal, cap);
+            nextByKey = Arrays.copyOf(nextByKey, cap);
+            nextByVal = Arrays.copyOf(nextByVal, cap);
+        }
+        entKey[size] = key;
+        entVal[size] = value;
+        link(size++);
+    }
+
+    private void link(int e) {
+        int key = entKey[e];
+        int value = entVal[e];
+        nextByKey[e] = NONE;
+        nextByVal[e] = NONE;
+        if (keyHead[key] == NONE) {
+            keyHead[key] = e;
+        } else {
+            nextByKey[keyTail[key]] = e;
+        }
+        keyTail[key] = e;
+        if (valHead[value] == NONE) {
+            valHead[value] = e;
+        } else {
+            nextByVal[valTail[value]] = e;
+        }
+        valTail[value] = e;
+    }
+
+    private void relink() {
+        Arrays.fill(keyHead, 0, strCount, NONE);
+        Arrays.fill(valHead, 0, strCount, NONE);
+        nextByKey = new int[entKey.length];
+        nextByVal = new int[entKey.length];
+        for (int e = 0; e < size; e++) {
+            link(e);
+        }
+    }
+
+    // Keeps the first entry of every string id in ids, which is entKey or entVal
+    private int removeRepeated(int[] ids) {
+        boolean[] seen = new boolean[strCount];
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (seen[ids[i]]) {
+                continue;
+            }
+            seen[ids[i]] = true;
+            entKey[kept] = entKey[i];
+            entVal[kept] = entVal[i];
+            kept++;
+        }
+        return truncate(kept);
+    }
+
+    private int truncate(int kept) {
+        int dupCount = size - kept;
+        size = kept;
+        if (dupCount > 0) {
+            relink();
+        }
+        return dupCount;
+    }
+
+    private static long pair(int key, int value) {
+        return ((long) key << 32) | (value & 0xFFFFFFFFL);
+    }
+
+    private int intern(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        int hash = mix(s.hashCode());
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != 0) {
+            int id = table[slot] - 1;
+            if (strHash[id] == hash && matches(id, bytes)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (strCount == strOff.length) {
+            growStrings();
+        }
+        if (arena.remaining() < bytes.length) {
+            growArena(bytes.length);
+        }
+        int id = strCount++;
+        strOff[id] = arena.position();
+        strLen[id] = bytes.length;
+        strHash[id] = hash;
+        keyHead[id] = NONE;
+        valHead[id] = NONE;
+        arena.put(bytes);
+        table[slot] = id + 1;
+        if (strCount * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return id;
+    }
+
+    private int find(String s) {
+        if (s == null || strCount == 0) {
+            return NONE;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        int hash = mix(s.hashCode());
+        int mask = table.length - 1;
+        for (int slot = hash & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            if (strHash[id] == hash && matches(id, bytes)) {
+                return id;
+            }
+        }
+        return NONE;
+    }
+
+    private static int mix(int hash) {
+        // Spread String.hashCode, which is nearly sequential for similar words
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private boolean matches(int id, byte[] bytes) {
+        if (strLen[id] != bytes.length) {
+            return false;
+        }
+        int off = strOff[id];
+        for (int i = 0; i < bytes.length; i++) {
+            if (arena.get(off + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String decode(int id) {
+        byte[] bytes = new byte[strLen[id]];
+        ByteBuffer slice = arena.duplicate();
+        slice.position(strOff[id]);
+        slice.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void growStrings() {
+        int cap = Math.max(strOff.length * 2, INITIAL_CAPACITY);
+        strOff = Arrays.copyOf(strOff, cap);
+        strLen = Arrays.copyOf(strLen, cap);
+        strHash = Arrays.copyOf(strHash, cap);
+        keyHead = Arrays.copyOf(keyHead, cap);
+        keyTail = Arrays.copyOf(keyTail, cap);
+        valHead = Arrays.copyOf(valHead, cap);
+        valTail = Arrays.copyOf(valTail, cap);
+    }
+
+    private void growArena(int needed) {
+        int cap = Math.max(arena.capacity() * 2, arena.position() + needed);
+        ByteBuffer grown = ByteBuffer.allocateDirect(cap);
+        arena.flip();
+        grown.put(arena);
+        arena = grown;
+    }
+
+    private void rehash(int cap) {
+        table = new int[cap];
+        int mask = cap - 1;
+        for (int id = 0; id < strCount; id++) {
+            int slot = strHash[id] & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+    }
+}
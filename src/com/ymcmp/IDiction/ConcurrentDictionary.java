@@ -0,0 +1,246 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 plank.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ymcmp.IDiction;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * A {@link Dictionary} that can be read from any thread while it is being
+ * changed. Readers use an immutable snapshot taken with a single volatile
+ * read, so lookups never lock. Writers are serialized: each change copies
+ * the current snapshot, applies itself to the copy and publishes the copy
+ * with an atomic reference swap. Batch related changes with
+ * {@link #update(Consumer)} so they cost one copy and become visible
+ * together.
+ *
+ * Lists and iterators returned are read-only views of the snapshot that was
+ * current when they were taken.
+ *
+ * @author plank
+ * @param <K>
+ * @param <V>
+ */
+public class ConcurrentDictionary<K, V> extends Dictionary<K, V> {
+
+    private final AtomicReference<Dictionary<K, V>> snapshot;
+
+    public ConcurrentDictionary() {
+        this(Collections.emptyList());
+    }
+
+    public ConcurrentDictionary(Collection<Map.Entry<K, V>> entries) {
+        Dictionary<K, V> initial = new Dictionary<>();
+        initial.addAll(entries);
+        this.snapshot = new AtomicReference<>(initial);
+    }
+
+    /**
+     * Applies {@code edit} to a private copy and publishes it once
+     * {@code edit} returns. Readers never see a partial edit.
+     *
+     * @param edit
+     */
+    public void update(Consumer<Dictionary<K, V>> edit) {
+        write((copy) -> {
+            edit.accept(copy);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean add(Map.Entry<K, V> newEntry) {
+        return write((copy) -> copy.add(newEntry));
+    }
+
+    @Override
+    public boolean addAll(Collection<Map.Entry<K, V>> col) {
+        return write((copy) -> copy.addAll(col));
+    }
+
+    @Override
+    public void addAll(Map<K, V> map) {
+        update((copy) -> copy.addAll(map));
+    }
+
+    @Override
+    public boolean remove(Map.Entry<K, V> entry) {
+        return write((copy) -> copy.remove(entry));
+    }
+
+    @Override
+    public int removeAll(Collection<Map.Entry<K, V>> col) {
+        return write((copy) -> copy.removeAll(col));
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return snapshot.get().containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        return snapshot.get().containsValue(value);
+    }
+
+    @Override
+    public Map.Entry<K, V> getIndex(int i) {
+        return snapshot.get().getIndex(i);
+    }
+
+    @Override
+    public List<Map.Entry<K, V>> getRange(int low, int high) {
+        return Collections.unmodifiableList(snapshot.get().getRange(low, high));
+    }
+
+    @Override
+    public List<V> getValues() {
+        return snapshot.get().getValues();
+    }
+
+    @Override
+    public List<K> getKeys() {
+        return snapshot.get().getKeys();
+    }
+
+    @Override
+    public List<V> getValues(K key) {
+        return snapshot.get().getValues(key);
+    }
+
+    @Override
+    public List<K> getKeys(V value) {
+        return snapshot.get().getKeys(value);
+    }
+
+    @Override
+    public void sort() {
+        update((copy) -> copy.sort());
+    }
+
+    @Override
+    public int removeDupByKey() {
+        return write((copy) -> copy.removeDupByKey());
+    }
+
+    @Override
+    public int removeDupByValue() {
+        return write((copy) -> copy.removeDupByValue());
+    }
+
+    @Override
+    public int removeDuplicates(Function<? super Map.Entry<K, V>, ?> identity, BinaryOperator<Map.Entry<K, V>> merge) {
+        return write((copy) -> copy.removeDuplicates(identity, merge));
+    }
+
+    @Override
+    public void trimToSize() {
+        // Every published snapshot is already trimmed
+    }
+
+    @Override
+    public int size() {
+        return snapshot.get().size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return snapshot.get().isEmpty();
+    }
+
+    @Override
+    public boolean contains(Map.Entry<K, V> o) {
+        return snapshot.get().contains(o);
+    }
+
+    @Override
+    public Object[] toArray() {
+        return snapshot.get().toArray();
+    }
+
+    @Override
+    public <T> T[] toArray(T[] a) {
+        return snapshot.get().toArray(a);
+    }
+
+    @Override
+    public void clear() {
+        update((copy) -> copy.clear());
+    }
+
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return view().iterator();
+    }
+
+    @Override
+    public void forEach(Consumer<? super Map.Entry<K, V>> action) {
+        snapshot.get().forEach(action);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return snapshot.get().equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return snapshot.get().hashCode();
+    }
+
+    @Override
+    public Stream<Map.Entry<K, V>> stream() {
+        return view().stream();
+    }
+
+    @Override
+    public Stream<Map.Entry<K, V>> parallelStream() {
+        return view().parallelStream();
+    }
+
+    private List<Map.Entry<K, V>> view() {
+        Dictionary<K, V> current = snapshot.get();
+        return Collections.unmodifiableList(current.getRange(0, current.size()));
+    }
+
+    // Single writer: copy, edit, publish
+    private synchronized <R> R write(Function<Dictionary<K, V>, R> edit) {
+        Dictionary<K, V> current = snapshot.get();
+        Dictionary<K, V> copy = new Dictionary<>();
+        copy.addAll(new ArrayList<>(current.getRange(0, current.size())));
+        R result = edit.apply(copy);
+        copy.trimToSize();
+        snapshot.set(copy);
+        return result;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 plank.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ymcmp.IDiction;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Translates large inputs on a work-stealing pool. Lines are read in chunks
+ * of {@code chunkLines}, every chunk is translated as one task and chunks are
+ * written back in input order. At most {@code maxInFlight} chunks are read
+ * ahead of the writer, so memory stays bounded whatever the input size.
+ *
+ * The output is exactly what {@link Translator#translate(Reader, Writer)}
+ * writes for the same input.
+ *
+ * @author plank
+ */
+public class CorpusTranslator {
+
+    private static final int DEFAULT_CHUNK_LINES = 2048;
+
+    private final Translator translator;
+    private final ForkJoinPool pool;
+    private final int chunkLines;
+    private final int maxInFlight;
+
+    /**
+     * Uses the common pool with a few chunks per worker in flight.
+     *
+     * @param translator
+     */
+    public CorpusTranslator(Translator translator) {
+        this(translator, ForkJoinPool.commonPool(), DEFAULT_CHUNK_LINES, 4 * ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * @param translator shared by every worker
+     * @param pool
+     * @param chunkLines lines per task
+     * @param maxInFlight chunks read but not yet written
+     */
+    public CorpusTranslator(Translator translator, ForkJoinPool pool, int chunkLines, int maxInFlight) {
+        if (chunkLines < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("chunkLines and maxInFlight must be positive");
+        }
+        this.translator = translator;
+        this.pool = pool;
+        this.chunkLines = chunkLines;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Translates {@code in} into {@code out}. Neither stream is closed.
+     *
+     * @param in
+     * @param out
+     * @return number of lines translated
+     * @throws IOException
+     */
+    public long translate(Reader in, Writer out) throws IOException {
+        BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+        ArrayDeque<ForkJoinTask<StringBuilder>> inFlight = new ArrayDeque<>(maxInFlight);
+        long lines = 0;
+        try {
+            List<String> chunk = new ArrayList<>(chunkLines);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                chunk.add(line);
+                if (chunk.size() == chunkLines) {
+                    lines += submit(chunk, inFlight, out);
+                    chunk = new ArrayList<>(chunkLines);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                lines += submit(chunk, inFlight, out);
+            }
+            while (!inFlight.isEmpty()) {
+                out.append(join(inFlight.poll()));
+            }
+        } finally {
+            inFlight.forEach((task) -> task.cancel(false));
+        }
+        out.flush();
+        return lines;
+    }
+
+    // Waits for the oldest chunk first when too many are in flight
+    private int submit(List<String> chunk, ArrayDeque<ForkJoinTask<StringBuilder>> inFlight, Writer out) throws IOException {
+        if (inFlight.size() == maxInFlight) {
+            out.append(join(inFlight.poll()));
+        }
+        inFlight.add(pool.submit(() -> {
+            StringBuilder sb = new StringBuilder(chunk.size() * 64);
+            chunk.forEach((line) -> translator.appendLine(line, sb));
+            return sb;
+        }));
+        return chunk.size();
+    }
+
+    private static StringBuilder join(ForkJoinTask<StringBuilder> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while translating", ex);
+        } catch (ExecutionException ex) {
+            throw new IOException("Cannot translate chunk", ex.getCause());
+        }
+    }
+}
@@ -1,196 +1,310 @@
-/*
- * The MIT License
- *
- * Copyright 2015 plank.
- *
- * Permission is hereby granted, free of charge, to any person obtaining a copy
- * of this software and associated documentation files (the "Software"), to deal
- * in the Software without restriction, including without limitation the rights
- * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
- * copies of the Software, and to permit persons to whom the Software is
- * furnished to do so, subject to the following conditions:
- *
- * The above copyright notice and this permission notice shall be included in
- * all copies or substantial portions of the Software.
- *
- * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
- * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
- * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
- * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
- * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
- * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
- * THE SOFTWARE.
- */
-package com.ymcmp.IDiction;
-
-import java.util.AbstractMap.SimpleEntry;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
-import java.util.Objects;
-import java.util.function.Consumer;
-import java.util.stream.Stream;
-
-/**
- *
- * @author plank
- * @param <K>
- * @param <V>
- */
-public class Dictionary<K, V> {
-
-    private final ArrayList<Map.Entry<K, V>> VOCABULARY = new ArrayList<>();
-
-    public boolean add(Map.Entry<K, V> newEntry) {
-        return VOCABULARY.add(newEntry);
-    }
-
-    public boolean addAll(Collection<Map.Entry<K, V>> col) {
-        return VOCABULARY.addAll(col);
-    }
-
-    public void addAll(Map<K, V> map) {
-        map.entrySet().stream().forEach((newEntry) -> VOCABULARY.add(newEntry));
-    }
-
-    public boolean containsKey(K key) {
-        return VOCABULARY.stream().anyMatch((entry) -> (entry.getKey().equals(key)));
-    }
-
-    public boolean containsValue(V value) {
-        return VOCABULARY.stream().anyMatch((entry) -> (entry.getValue().equals(value)));
-    }
-
-    public Map.Entry<K, V> getIndex(int i) {
-        return VOCABULARY.get(i);
-    }
-
-    public List<Map.Entry<K, V>> getRange(int low, int high) {
-        return VOCABULARY.subList(low, high);
-    }
-
-    public List<V> getValues() {
-        List<V> values = new ArrayList<>();
-        VOCABULARY.forEach((item) -> values.add(item.getValue()));
-        return values;
-    }
-
-    public List<K> getKeys() {
-        List<K> keys = new ArrayList<>();
-        VOCABULARY.forEach((item) -> keys.add(item.getKey()));
-        return keys;
-    }
-
-    public List<V> getValues(K key) {
-        if (!containsKey(key)) {
-            return null;
-        }
-        List<V> values = new ArrayList<>();
-        VOCABULARY.stream().filter((entry) -> (entry.getKey().equals(key))).forEach((entry) -> {
-            values.add(entry.getValue());
-        });
-        return values;
-    }
-
-    public List<K> getKeys(V value) {
-        if (!containsValue(value)) {
-            return null;
-        }
-        List<K> keys = new ArrayList<>();
-        VOCABULARY.stream().filter((entry) -> (entry.getValue().equals(value))).forEach((entry) -> {
-            keys.add(entry.getKey());
-        });
-        return keys;
-    }
-
-    public void sort() {
-        VOCABULARY.sort((Map.Entry<K, V> o1, Map.Entry<K, V> o2) -> {
-            return (o1.getKey() + "").compareTo(o2.getKey() + "");
-        });
-    }
-
-    public int removeDupByKey() {
-        int dupCount = 0;
-        Map.Entry<K, V> lastElement = new SimpleEntry<>(null, null);
-        for (int i = 0; i < VOCABULARY.size(); i++) {
-            if (VOCABULARY.get(i).getKey().equals(lastElement.getKey())) {
-                VOCABULARY.remove(i);
-                dupCount++;
-            }
-            lastElement = VOCABULARY.get(i);
-        }
-        return dupCount;
-    }
-
-    public int removeDupByValue() {
-        int dupCount = 0;
-        Map.Entry<K, V> lastElement = new SimpleEntry<>(null, null);
-        for (int i = 0; i < VOCABULARY.size(); i++) {
-            if (VOCABULARY.get(i).getValue().equals(lastElement.getValue())) {
-                VOCABULARY.remove(i);
-                dupCount++;
-            }
-            lastElement = VOCABULARY.get(i);
-        }
-        return dupCount;
-    }
-
-    public void trimToSize() {
-        VOCABULARY.trimToSize();
-    }
-
-    public int size() {
-        return VOCABULARY.size();
-    }
-
-    public boolean isEmpty() {
-        return VOCABULARY.isEmpty();
-    }
-
-    public boolean contains(Map.Entry<K, V> o) {
-        return VOCABULARY.contains(o);
-    }
-
-    public Object[] toArray() {
-        return VOCABULARY.toArray();
-    }
-
-    public <T> T[] toArray(T[] a) {
-        return VOCABULARY.toArray(a);
-    }
-
-    public void clear() {
-        VOCABULARY.clear();
-    }
-
-    public Iterator<Map.Entry<K, V>> iterator() {
-        return VOCABULARY.iterator();
-    }
-
-    public void forEach(Consumer<? super Map.Entry<K, V>> action) {
-        VOCABULARY.forEach(action);
-    }
-
-    @Override
-    public boolean equals(Object o) {
-        return VOCABULARY.equals(o);
-    }
-
-    @Override
-    public int hashCode() {
-        int hash = 7;
-        hash = 89 * hash + Objects.hashCode(this.VOCABULARY);
-        return hash;
-    }
-
-    public Stream<Map.Entry<K, V>> stream() {
-        return VOCABULARY.stream();
-    }
-
-    public Stream<Map.Entry<K, V>> parallelStream() {
-        return VOCABULARY.parallelStream();
-    }
-
-}
+/*
+ * The MIT License
+ *
+ * Copyright 2015 plank.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ymcmp.IDiction;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Any number of threads may read a dictionary at once, as long as none of
+ * them modifies it meanwhile.
+ *
+ * @author plank
+ * @param <K>
+ * @param <V>
+ */
+public class Dictionary<K, V> {
+
+    /**
+     * Which entry survives when several share the same identity.
+     */
+    public enum DuplicatePolicy {
+        KEEP_FIRST, KEEP_LAST
+    }
+
+    private final ArrayList<Map.Entry<K, V>> VOCABULARY = new ArrayList<>();
+    // key -> values and value -> keys, both in vocabulary order
+    private final HashMap<K, List<V>> KEY_INDEX = new HashMap<>();
+    private final HashMap<V, List<K>> VALUE_INDEX = new HashMap<>();
+
+    public boolean add(Map.Entry<K, V> newEntry) {
+        index(newEntry);
+        return VOCABULARY.add(newEntry);
+    }
+
+    public boolean addAll(Collection<Map.Entry<K, V>> col) {
+        col.forEach((newEntry) -> index(newEntry));
+        return VOCABULARY.addAll(col);
+    }
+
+    public void addAll(Map<K, V> map) {
+        map.entrySet().stream().forEach((newEntry) -> add(newEntry));
+    }
+
+    public boolean remove(Map.Entry<K, V> entry) {
+        return removeAll(Collections.singletonList(entry)) > 0;
+    }
+
+    /**
+     * Removes one occurrence of each entry in {@code col}. The key and value
+     * indexes are updated per removed entry instead of being rebuilt.
+     *
+     * @param col
+     * @return number of entries removed
+     */
+    public int removeAll(Collection<Map.Entry<K, V>> col) {
+        if (col.isEmpty()) {
+            return 0;
+        }
+        HashMap<Map.Entry<K, V>, Integer> pending = new HashMap<>();
+        col.forEach((entry) -> pending.merge(new SimpleEntry<>(entry), 1, Integer::sum));
+        int before = VOCABULARY.size();
+        VOCABULARY.removeIf((entry) -> {
+            Integer count = pending.get(entry);
+            if (count == null) {
+                return false;
+            }
+            if (count == 1) {
+                pending.remove(entry);
+            } else {
+                pending.put(entry, count - 1);
+            }
+            unindex(entry);
+            return true;
+        });
+        return before - VOCABULARY.size();
+    }
+
+    public boolean containsKey(K key) {
+        return KEY_INDEX.containsKey(key);
+    }
+
+    public boolean containsValue(V value) {
+        return VALUE_INDEX.containsKey(value);
+    }
+
+    public Map.Entry<K, V> getIndex(int i) {
+        return VOCABULARY.get(i);
+    }
+
+    public List<Map.Entry<K, V>> getRange(int low, int high) {
+        return VOCABULARY.subList(low, high);
+    }
+
+    public List<V> getValues() {
+        List<V> values = new ArrayList<>();
+        VOCABULARY.forEach((item) -> values.add(item.getValue()));
+        return values;
+    }
+
+    public List<K> getKeys() {
+        List<K> keys = new ArrayList<>();
+        VOCABULARY.forEach((item) -> keys.add(item.getKey()));
+        return keys;
+    }
+
+    /**
+     * @param key
+     * @return a read-only view of the values mapped to {@code key}, or
+     * {@code null} if there are none
+     */
+    public List<V> getValues(K key) {
+        List<V> values = KEY_INDEX.get(key);
+        return values == null ? null : Collections.unmodifiableList(values);
+    }
+
+    /**
+     * @param value
+     * @return a read-only view of the keys mapped to {@code value}, or
+     * {@code null} if there are none
+     */
+    public List<K> getKeys(V value) {
+        List<K> keys = VALUE_INDEX.get(value);
+        return keys == null ? null : Collections.unmodifiableList(keys);
+    }
+
+    public void sort() {
+        // Decorate with the string form of each key once instead of twice per comparison
+        List<SimpleEntry<String, Map.Entry<K, V>>> keyed = new ArrayList<>(VOCABULARY.size());
+        VOCABULARY.forEach((entry) -> keyed.add(new SimpleEntry<>(String.valueOf(entry.getKey()), entry)));
+        keyed.sort(Map.Entry.comparingByKey());
+        for (int i = 0; i < keyed.size(); i++) {
+            VOCABULARY.set(i, keyed.get(i).getValue());
+        }
+        reindex();
+    }
+
+    /**
+     * Keeps the first entry of every key. Does not need {@link #sort()}.
+     *
+     * @return number of entries removed
+     */
+    public int removeDupByKey() {
+        return removeDuplicates(Map.Entry::getKey, DuplicatePolicy.KEEP_FIRST);
+    }
+
+    /**
+     * Keeps the first entry of every value. Does not need {@link #sort()}.
+     *
+     * @return number of entries removed
+     */
+    public int removeDupByValue() {
+        return removeDuplicates(Map.Entry::getValue, DuplicatePolicy.KEEP_FIRST);
+    }
+
+    /**
+     * @param identity entries with equal identities are duplicates
+     * @param policy
+     * @return number of entries removed
+     * @see #removeDuplicates(Function, BinaryOperator)
+     */
+    public int removeDuplicates(Function<? super Map.Entry<K, V>, ?> identity, DuplicatePolicy policy) {
+        return removeDuplicates(identity, policy == DuplicatePolicy.KEEP_FIRST
+                ? (Map.Entry<K, V> kept, Map.Entry<K, V> dup) -> kept
+                : (Map.Entry<K, V> kept, Map.Entry<K, V> dup) -> dup);
+    }
+
+    /**
+     * Replaces every group of entries sharing an identity by one entry, in a
+     * single pass over the vocabulary. The survivor takes the place of the
+     * first entry of its group; the order of everything else is kept.
+     *
+     * @param identity entries with equal identities are duplicates
+     * @param merge combines the survivor so far with the next duplicate
+     * @return number of entries removed
+     */
+    public int removeDuplicates(Function<? super Map.Entry<K, V>, ?> identity, BinaryOperator<Map.Entry<K, V>> merge) {
+        HashMap<Object, Integer> slots = new HashMap<>();
+        int kept = 0;
+        for (int i = 0; i < VOCABULARY.size(); i++) {
+            Map.Entry<K, V> entry = VOCABULARY.get(i);
+            Integer slot = slots.putIfAbsent(identity.apply(entry), kept);
+            if (slot == null) {
+                VOCABULARY.set(kept++, entry);
+            } else {
+                VOCABULARY.set(slot, merge.apply(VOCABULARY.get(slot), entry));
+            }
+        }
+        int dupCount = VOCABULARY.size() - kept;
+        if (dupCount > 0) {
+            VOCABULARY.subList(kept, VOCABULARY.size()).clear();
+            reindex();
+        }
+        return dupCount;
+    }
+
+    public void trimToSize() {
+        VOCABULARY.trimToSize();
+    }
+
+    public int size() {
+        return VOCABULARY.size();
+    }
+
+    public boolean isEmpty() {
+        return VOCABULARY.isEmpty();
+    }
+
+    public boolean contains(Map.Entry<K, V> o) {
+        return VOCABULARY.contains(o);
+    }
+
+    public Object[] toArray() {
+        return VOCABULARY.toArray();
+    }
+
+    public <T> T[] toArray(T[] a) {
+        return VOCABULARY.toArray(a);
+    }
+
+    public void clear() {
+        VOCABULARY.clear();
+        KEY_INDEX.clear();
+        VALUE_INDEX.clear();
+    }
+
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return VOCABULARY.iterator();
+    }
+
+    public void forEach(Consumer<? super Map.Entry<K, V>> action) {
+        VOCABULARY.forEach(action);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return VOCABULARY.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 89 * hash + Objects.hashCode(this.VOCABULARY);
+        return hash;
+    }
+
+    public Stream<Map.Entry<K, V>> stream() {
+        return VOCABULARY.stream();
+    }
+
+    public Stream<Map.Entry<K, V>> parallelStream() {
+        return VOCABULARY.parallelStream();
+    }
+
+    private void index(Map.Entry<K, V> entry) {
+        KEY_INDEX.computeIfAbsent(entry.getKey(), (k) -> new ArrayList<>(1)).add(entry.getValue());
+        VALUE_INDEX.computeIfAbsent(entry.getValue(), (v) -> new ArrayList<>(1)).add(entry.getKey());
+    }
+
+    private void unindex(Map.Entry<K, V> entry) {
+        List<V> values = KEY_INDEX.get(entry.getKey());
+        values.remove(entry.getValue());
+        if (values.isEmpty()) {
+            KEY_INDEX.remove(entry.getKey());
+        }
+        List<K> keys = VALUE_INDEX.get(entry.getValue());
+        keys.remove(entry.getKey());
+        if (keys.isEmpty()) {
+            VALUE_INDEX.remove(entry.getValue());
+        }
+    }
+
+    private void reindex() {
+        KEY_INDEX.clear();
+        VALUE_INDEX.clear();
+        VOCABULARY.forEach((entry) -> index(entry));
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 plank.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ymcmp.IDiction;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the last successfully updated vocabulary on disk so it survives a
+ * restart. The snapshot is written by {@link DictionaryCompiler}, which
+ * replaces the file atomically, and is opened as a {@link MappedDictionary},
+ * which is much faster than parsing the bundled properties again.
+ *
+ * @author plank
+ */
+public class DictionaryCache {
+
+    private static final String FILE_NAME = "vocabulary.pjdc";
+
+    private final Path file;
+
+    public DictionaryCache(Path dir) {
+        this.file = dir.resolve(FILE_NAME);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @param notBefore ignore a snapshot last written before this time, in
+     * milliseconds since the epoch
+     * @return the cached dictionary, or {@code null} if there is none, it is
+     * too old or it fails its checksum
+     */
+    public Dictionary<String, String> load(long notBefore) {
+        try {
+            if (!Files.isRegularFile(file) || Files.getLastModifiedTime(file).toMillis() < notBefore) {
+                return null;
+            }
+            MappedDictionary dict = MappedDictionary.open(file);
+            if (!dict.verify()) {
+                System.err.println("Ignoring damaged cache " + file);
+                return null;
+            }
+            return dict;
+        } catch (IOException ex) {
+            System.err.println("Cannot read cache " + file + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the snapshot. A crash part way leaves the previous one intact.
+     *
+     * @param entries
+     * @throws IOException
+     */
+    public void store(List<Map.Entry<String, String>> entries) throws IOException {
+        Dictionary<String, String> dict = new Dictionary<>();
+        dict.addAll(entries);
+        DictionaryCompiler.compile(dict, file);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 plank.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ymcmp.IDiction;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Compiles {@code .properties} vocabularies into the binary format read by
+ * {@link MappedDictionary}: a sorted UTF-8 string table followed by a
+ * key-sorted and a value-sorted table of string id pairs.
+ *
+ * Usage: {@code DictionaryCompiler <output> <input.properties>...}
+ *
+ * @author plank
+ */
+public final class DictionaryCompiler {
+
+    private DictionaryCompiler() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: DictionaryCompiler <output> <input.properties>...");
+            System.exit(1);
+        }
+        Dictionary<String, String> dict = new Dictionary<>();
+        for (int i = 1; i < args.length; i++) {
+            dict.addAll(PropertiesParser.entries(PropertiesParser.read(Paths.get(args[i]).toUri().toURL())));
+        }
+        compile(dict, Paths.get(args[0]));
+        System.out.println("Compiled " + dict.size() + " entries into " + args[0]);
+    }
+
+    /**
+     * Writes {@code dict} to {@code out}. The file is written next to its
+     * destination and then renamed over it, so readers never see a partial
+     * file.
+     *
+     * @param dict
+     * @param out
+     * @throws IOException
+     */
+    public static void compile(Dictionary<String, String> dict, Path out) throws IOException {
+        int entCount = dict.size();
+        String[] keys = new String[entCount];
+        String[] values = new String[entCount];
+        Map<String, Integer> ids = new HashMap<>();
+        for (int i = 0; i < entCount; i++) {
+            Map.Entry<String, String> entry = dict.getIndex(i);
+            keys[i] = entry.getKey();
+            values[i] = entry.getValue();
+            ids.putIfAbsent(keys[i], -1);
+            ids.putIfAbsent(values[i], -1);
+        }
+
+        byte[][] strings = new byte[ids.size()][];
+        int n = 0;
+        for (String s : ids.keySet()) {
+            strings[n++] = s.getBytes(StandardCharsets.UTF_8);
+        }
+        Arrays.sort(strings, DictionaryCompiler::compareUnsigned);
+        int dataSize = 0;
+        for (int id = 0; id < strings.length; id++) {
+            ids.put(new String(strings[id], StandardCharsets.UTF_8), id);
+            dataSize += strings[id].length;
+        }
+
+        int dataOff = MappedDictionary.HEADER_SIZE + 4 * (strings.length + 1);
+        int fwdOff = (dataOff + dataSize + 3) & ~3;
+        int revOff = fwdOff + 8 * entCount;
+        ByteBuffer buf = ByteBuffer.allocate(revOff + 8 * entCount);
+        buf.putInt(0, MappedDictionary.MAGIC);
+        buf.putInt(4, MappedDictionary.VERSION);
+        buf.putInt(MappedDictionary.H_STRINGS, strings.length);
+        buf.putInt(MappedDictionary.H_ENTRIES, entCount);
+        buf.putInt(MappedDictionary.H_DATA, dataOff);
+        buf.putInt(MappedDictionary.H_FORWARD, fwdOff);
+        buf.putInt(MappedDictionary.H_REVERSE, revOff);
+
+        int pos = 0;
+        buf.position(dataOff);
+        for (int id = 0; id < strings.length; id++) {
+            buf.putInt(MappedDictionary.HEADER_SIZE + 4 * id, pos);
+            buf.put(strings[id]);
+            pos += strings[id].length;
+        }
+        buf.putInt(MappedDictionary.HEADER_SIZE + 4 * strings.length, pos);
+
+        // (id << 32 | entry index) keeps entries sharing an id in dictionary order
+        long[] fwd = new long[entCount];
+        long[] rev = new long[entCount];
+        for (int i = 0; i < entCount; i++) {
+            fwd[i] = ((long) ids.get(keys[i]) << 32) | i;
+            rev[i] = ((long) ids.get(values[i]) << 32) | i;
+        }
+        Arrays.sort(fwd);
+        Arrays.sort(rev);
+        for (int i = 0; i < entCount; i++) {
+            int e = (int) fwd[i];
+            buf.putInt(fwdOff + 8 * i, (int) (fwd[i] >>> 32));
+            buf.putInt(fwdOff + 8 * i + 4, ids.get(values[e]));
+            e = (int) rev[i];
+            buf.putInt(revOff + 8 * i, (int) (rev[i] >>> 32));
+            buf.putInt(revOff + 8 * i + 4, ids.get(keys[e]));
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), MappedDictionary.HEADER_SIZE, buf.capacity() - MappedDictionary.HEADER_SIZE);
+        buf.putInt(MappedDictionary.H_CHECKSUM, (int) crc.getValue());
+
+        Path dir = out.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, out.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                buf.clear();
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+                channel.force(true);
+            }
+            Files.move(tmp, out, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static int compareUnsigned(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return a.length - b.length;
+    }
+}
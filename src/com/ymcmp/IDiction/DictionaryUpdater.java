@@ -0,0 +1,356 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 plank.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ymcmp.IDiction;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Downloads the vocabulary sources concurrently and keeps the published
+ * {@link Dictionary} in sync with them.
+ *
+ * Each source is fetched with a conditional request (ETag and
+ * Last-Modified) and its content is hashed, so a source that did not change
+ * costs one round trip and nothing else. For a changed source only the
+ * entries that were added or removed since the last sync are applied to the
+ * published dictionary, on the {@code applyOn} executor. A
+ * {@link LayeredDictionary} with one segment per source, named by
+ * {@link #getSourceNames()}, only has the segments of changed sources
+ * rebuilt and swapped in together; a {@link ConcurrentDictionary} takes the
+ * whole change as one atomic update. Either way readers on other threads
+ * never see half of it.
+ *
+ * When a source has no known baseline (the first sync, unless
+ * {@link #seed(int, Collection)} was called) every source is downloaded and a
+ * fresh {@link LayeredDictionary} is published with a single reference swap
+ * instead. A failed update leaves both the dictionary and the sync state
+ * untouched.
+ *
+ * Any URL Java can open works as a source, including {@code file:} URLs.
+ *
+ * @author plank
+ */
+public class DictionaryUpdater {
+
+    private static final int TIMEOUT = 15000;
+
+    /**
+     * Entries changed by one update.
+     */
+    public static final class Delta {
+
+        private final List<Map.Entry<String, String>> added;
+        private final List<Map.Entry<String, String>> removed;
+        private final boolean replaced;
+
+        private Delta(List<Map.Entry<String, String>> added, List<Map.Entry<String, String>> removed, boolean replaced) {
+            this.added = Collections.unmodifiableList(added);
+            this.removed = Collections.unmodifiableList(removed);
+            this.replaced = replaced;
+        }
+
+        public List<Map.Entry<String, String>> getAdded() {
+            return added;
+        }
+
+        public List<Map.Entry<String, String>> getRemoved() {
+            return removed;
+        }
+
+        /**
+         * @return true if a whole new dictionary was published instead of
+         * patching the old one
+         */
+        public boolean isReplaced() {
+            return replaced;
+        }
+
+        public boolean isEmpty() {
+            return !replaced && added.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    // What was last applied from one source
+    private static final class SourceState {
+
+        private final String etag;
+        private final String lastModified;
+        private final byte[] digest;
+        private final Map<String, String> entries;
+
+        private SourceState(String etag, String lastModified, byte[] digest, Map<String, String> entries) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.digest = digest;
+            this.entries = entries;
+        }
+    }
+
+    private final List<URL> sources;
+    private final List<String> names;
+    private final AtomicReference<Dictionary<String, String>> target;
+    private final Executor applyOn;
+    private final SourceState[] states;
+    private final AtomicBoolean updating = new AtomicBoolean();
+    private final ExecutorService executor = Executors.newCachedThreadPool((Runnable r) -> {
+        Thread t = new Thread(r, "dictionary-update");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * @param sources merged in this order
+     * @param target where the dictionary is published
+     */
+    public DictionaryUpdater(List<URL> sources, AtomicReference<Dictionary<String, String>> target) {
+        this(sources, target, Runnable::run);
+    }
+
+    /**
+     * @param sources merged in this order
+     * @param target where the dictionary is published
+     * @param applyOn runs every change to the published dictionary, such as
+     * {@code SwingUtilities::invokeLater} when it is read on the EDT
+     */
+    public DictionaryUpdater(List<URL> sources, AtomicReference<Dictionary<String, String>> target, Executor applyOn) {
+        this.sources = Collections.unmodifiableList(new ArrayList<>(sources));
+        List<String> named = new ArrayList<>();
+        for (URL url : this.sources) {
+            String path = url.getPath();
+            String name = path.substring(path.lastIndexOf('/') + 1);
+            // Segments are told apart by name
+            named.add(name.isEmpty() || named.contains(name) ? url.toString() : name);
+        }
+        this.names = Collections.unmodifiableList(named);
+        this.target = target;
+        this.applyOn = applyOn;
+        this.states = new SourceState[this.sources.size()];
+    }
+
+    public List<URL> getSources() {
+        return sources;
+    }
+
+    /**
+     * @return the segment name of each source: the file name of its URL,
+     * or the whole URL where file names clash
+     */
+    public List<String> getSourceNames() {
+        return names;
+    }
+
+    public boolean isUpdating() {
+        return updating.get();
+    }
+
+    /**
+     * Records the entries the published dictionary already holds for a
+     * source, so the first update can send only the difference.
+     *
+     * @param source index into {@link #getSources()}
+     * @param entries each key once
+     */
+    public void seed(int source, Collection<? extends Map.Entry<String, String>> entries) {
+        if (updating.get()) {
+            throw new IllegalStateException("Cannot seed while updating");
+        }
+        Map<String, String> map = new HashMap<>();
+        entries.forEach((entry) -> map.put(entry.getKey(), entry.getValue()));
+        states[source] = new SourceState(null, null, null, map);
+    }
+
+    /**
+     * Starts an update and returns immediately.
+     *
+     * @return completes with the applied changes, or exceptionally if a
+     * source could not be read or an update is already running
+     */
+    public CompletableFuture<Delta> update() {
+        if (!updating.compareAndSet(false, true)) {
+            CompletableFuture<Delta> busy = new CompletableFuture<>();
+            busy.completeExceptionally(new IllegalStateException("Already started updating"));
+            return busy;
+        }
+        long started = System.nanoTime();
+        boolean full = Arrays.asList(states).contains(null);
+        List<CompletableFuture<SourceState>> parts = new ArrayList<>(sources.size());
+        for (int i = 0; i < sources.size(); i++) {
+            URL url = sources.get(i);
+            SourceState old = full ? null : states[i];
+            parts.add(CompletableFuture.supplyAsync(() -> fetch(url, old), executor));
+        }
+        return CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[parts.size()]))
+                .thenApplyAsync((ignored) -> {
+                    SourceState[] fresh = new SourceState[parts.size()];
+                    for (int i = 0; i < fresh.length; i++) {
+                        fresh[i] = parts.get(i).join();
+                    }
+                    Delta delta = full ? replace(fresh) : patch(fresh);
+                    System.arraycopy(fresh, 0, states, 0, fresh.length);
+                    return delta;
+                }, applyOn)
+                .whenComplete((delta, ex) -> {
+                    updating.set(false);
+                    if (ex == null) {
+                        Metrics.GLOBAL.updated(System.nanoTime() - started);
+                    }
+                });
+    }
+
+    private Delta replace(SourceState[] fresh) {
+        List<Map.Entry<String, String>> added = new ArrayList<>();
+        for (SourceState state : fresh) {
+            state.entries.forEach((key, value) -> added.add(new SimpleImmutableEntry<>(key, value)));
+        }
+        target.set(layered(fresh));
+        return new Delta(added, Collections.emptyList(), true);
+    }
+
+    private Delta patch(SourceState[] fresh) {
+        List<Map.Entry<String, String>> added = new ArrayList<>();
+        List<Map.Entry<String, String>> removed = new ArrayList<>();
+        boolean[] changed = new boolean[fresh.length];
+        for (int i = 0; i < fresh.length; i++) {
+            Map<String, String> before = states[i].entries;
+            Map<String, String> after = fresh[i].entries;
+            if (before == after) {
+                continue;
+            }
+            int diffs = added.size() + removed.size();
+            before.forEach((key, value) -> {
+                if (!value.equals(after.get(key))) {
+                    removed.add(new SimpleImmutableEntry<>(key, value));
+                }
+            });
+            after.forEach((key, value) -> {
+                if (!value.equals(before.get(key))) {
+                    added.add(new SimpleImmutableEntry<>(key, value));
+                }
+            });
+            changed[i] = added.size() + removed.size() != diffs;
+        }
+        Dictionary<String, String> dict = target.get();
+        if (dict instanceof LayeredDictionary) {
+            LayeredDictionary<String, String> layered = (LayeredDictionary<String, String>) dict;
+            if (!layered.getSources().equals(names)) {
+                // Not laid out one segment per source; rebuild it whole
+                target.set(layered(fresh));
+                return new Delta(added, removed, false);
+            }
+            Map<String, Dictionary<String, String>> segments = new LinkedHashMap<>();
+            for (int i = 0; i < fresh.length; i++) {
+                if (changed[i]) {
+                    segments.put(names.get(i), segment(fresh[i].entries));
+                }
+            }
+            layered.putAll(segments);
+        } else if (dict instanceof ConcurrentDictionary) {
+            ((ConcurrentDictionary<String, String>) dict).update((copy) -> {
+                copy.removeAll(removed);
+                copy.addAll(added);
+            });
+        } else {
+            dict.removeAll(removed);
+            dict.addAll(added);
+        }
+        return new Delta(added, removed, false);
+    }
+
+    private LayeredDictionary<String, String> layered(SourceState[] fresh) {
+        LayeredDictionary<String, String> layered = new LayeredDictionary<>();
+        Map<String, Dictionary<String, String>> all = new LinkedHashMap<>();
+        for (int i = 0; i < fresh.length; i++) {
+            all.put(names.get(i), segment(fresh[i].entries));
+        }
+        layered.putAll(all);
+        return layered;
+    }
+
+    private static Dictionary<String, String> segment(Map<String, String> entries) {
+        Dictionary<String, String> dict = new Dictionary<>();
+        dict.addAll(entries);
+        dict.trimToSize();
+        return dict;
+    }
+
+    // Returns old itself when the source did not change
+    private static SourceState fetch(URL url, SourceState old) {
+        try {
+            URLConnection conn = url.openConnection();
+            conn.setConnectTimeout(TIMEOUT);
+            conn.setReadTimeout(TIMEOUT);
+            if (old != null && conn instanceof HttpURLConnection) {
+                if (old.etag != null) {
+                    conn.setRequestProperty("If-None-Match", old.etag);
+                }
+                if (old.lastModified != null) {
+                    conn.setRequestProperty("If-Modified-Since", old.lastModified);
+                }
+                if (((HttpURLConnection) conn).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    return old;
+                }
+            }
+            byte[] body;
+            try (InputStream in = conn.getInputStream()) {
+                body = PropertiesParser.readFully(in);
+            }
+            String etag = conn.getHeaderField("ETag");
+            String lastModified = conn.getHeaderField("Last-Modified");
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            if (old != null && Arrays.equals(digest, old.digest)) {
+                return new SourceState(etag, lastModified, digest, old.entries);
+            }
+            Map<String, String> entries = new HashMap<>();
+            // Later values of a repeated key win, as in Properties
+            PropertiesParser.parse(ByteBuffer.wrap(body), entries::put);
+            return new SourceState(etag, lastModified, digest, entries);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot read " + url, ex);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 plank.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ymcmp.IDiction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * "Did you mean" suggestions under the (case insensitive) Levenshtein
+ * distance. The words are kept sorted, which makes the array an implicit
+ * trie: a query walks it running a Levenshtein automaton (one edit distance
+ * row per prefix character), reuses the rows of the prefix shared with the
+ * previous word, and skips every word under a prefix as soon as that
+ * prefix's row is already beyond the allowed distance. Only prefixes within
+ * reach of the query are ever visited, not the whole vocabulary.
+ *
+ * Instances are immutable and can be queried from any thread.
+ *
+ * @author plank
+ */
+public class FuzzyIndex {
+
+    private final String[] folded;
+    private final String[] words;
+    private final int maxLength;
+
+    public FuzzyIndex(Collection<String> words) {
+        Map<String, String> byFolded = new HashMap<>();
+        words.forEach((word) -> byFolded.putIfAbsent(word.toLowerCase(), word));
+        this.folded = byFolded.keySet().toArray(new String[byFolded.size()]);
+        Arrays.sort(this.folded);
+        this.words = new String[folded.length];
+        int longest = 0;
+        for (int i = 0; i < folded.length; i++) {
+            this.words[i] = byFolded.get(folded[i]);
+            longest = Math.max(longest, folded[i].length());
+        }
+        this.maxLength = longest;
+    }
+
+    public int size() {
+        return words.length;
+    }
+
+    /**
+     * @param word
+     * @param maxDistance
+     * @param limit
+     * @return up to {@code limit} words within {@code maxDistance} edits of
+     * {@code word}, closest first
+     */
+    public List<String> suggest(String word, int maxDistance, int limit) {
+        List<String> result = new ArrayList<>();
+        if (folded.length == 0 || limit <= 0) {
+            return result;
+        }
+        String query = word.toLowerCase();
+        int q = query.length();
+        // rows[k] is the distance row of the query against the current word's first k characters
+        int[][] rows = new int[maxLength + 1][q + 1];
+        for (int j = 0; j <= q; j++) {
+            rows[0][j] = j;
+        }
+        // Hits bucketed by distance keep the closest first without sorting
+        List<List<String>> hits = new ArrayList<>(maxDistance + 1);
+        for (int d = 0; d <= maxDistance; d++) {
+            hits.add(new ArrayList<>());
+        }
+
+        String prev = "";
+        int valid = 0;
+        int i = 0;
+        while (i < folded.length) {
+            String w = folded[i];
+            int depth = Math.min(commonPrefix(prev, w), valid);
+            boolean pruned = false;
+            while (depth < w.length()) {
+                int[] above = rows[depth];
+                int[] row = rows[depth + 1];
+                char c = w.charAt(depth);
+                row[0] = depth + 1;
+                int min = row[0];
+                for (int j = 1; j <= q; j++) {
+                    int cost = query.charAt(j - 1) == c ? 0 : 1;
+                    row[j] = Math.min(Math.min(row[j - 1] + 1, above[j] + 1), above[j - 1] + cost);
+                    min = Math.min(min, row[j]);
+                }
+                depth++;
+                if (min > maxDistance) {
+                    pruned = true;
+                    break;
+                }
+            }
+            prev = w;
+            if (pruned) {
+                // Nothing under this prefix can come back within range
+                valid = depth - 1;
+                i = skip(w.substring(0, depth), i + 1);
+            } else {
+                valid = depth;
+                int d = rows[depth][q];
+                if (d <= maxDistance) {
+                    hits.get(d).add(words[i]);
+                }
+                i++;
+            }
+        }
+        for (List<String> bucket : hits) {
+            for (String hit : bucket) {
+                if (result.size() == limit) {
+                    return result;
+                }
+                result.add(hit);
+            }
+        }
+        return result;
+    }
+
+    // Index of the first word from `from' on that does not start with prefix
+    private int skip(String prefix, int from) {
+        int low = from;
+        int high = folded.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (folded[mid].startsWith(prefix)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < n && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 plank.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ymcmp.IDiction;
+
+import javax.swing.JEditorPane;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.html.HTMLDocument;
+
+/**
+ * Renders sections as HTML into one reusable buffer, and shows translations
+ * by updating the description pane in place. The buffer is pre-sized and
+ * only grows, and all text is escaped as it is copied in, so rendering
+ * costs no intermediate strings. Not thread-safe: keep one renderer per
+ * thread.
+ *
+ * @author plank
+ */
+public class HtmlRenderer {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Sections of the description pane, replaced as plain text by update
+    private static final String HEADER_ID = "header";
+    private static final String BODY_ID = "body";
+    private static final String NOTE_ID = "note";
+    private static final String TEMPLATE = "<html><body>"
+            + "<h1 id=\"" + HEADER_ID + "\">&nbsp;</h1><hr />"
+            + "<div id=\"" + BODY_ID + "\">&nbsp;</div>"
+            + "<div id=\"" + NOTE_ID + "\">&nbsp;</div>"
+            + "</body></html>";
+
+    private final StringBuilder html = new StringBuilder(INITIAL_CAPACITY);
+
+    /**
+     * Empties the buffer, keeping its capacity.
+     *
+     * @return this renderer
+     */
+    public HtmlRenderer reset() {
+        html.setLength(0);
+        return this;
+    }
+
+    /**
+     * Appends a header, a rule and a line of text.
+     *
+     * @param header
+     * @param body
+     * @return this renderer
+     */
+    public HtmlRenderer section(String header, CharSequence body) {
+        html.append("<h1>");
+        escape(header, 0, header.length(), html);
+        html.append("</h1><hr />");
+        escape(body, 0, body.length(), html);
+        html.append("<br />");
+        return this;
+    }
+
+    /**
+     * @return the rendered HTML; it is overwritten by the next call on this
+     * renderer, so copy it if it has to outlive that
+     */
+    public CharSequence html() {
+        return html;
+    }
+
+    /**
+     * Appends {@code s[from, to)} to {@code out} with the characters that
+     * are markup in HTML replaced by entities.
+     *
+     * @param s
+     * @param from
+     * @param to
+     * @param out
+     * @return out
+     */
+    public static StringBuilder escape(CharSequence s, int from, int to, StringBuilder out) {
+        int run = from;
+        for (int i = from; i < to; ++i) {
+            String entity;
+            switch (s.charAt(i)) {
+            case '&':
+                entity = "&amp;";
+                break;
+            case '<':
+                entity = "&lt;";
+                break;
+            case '>':
+                entity = "&gt;";
+                break;
+            case '"':
+                entity = "&quot;";
+                break;
+            default:
+                continue;
+            }
+            out.append(s, run, i).append(entity);
+            run = i + 1;
+        }
+        return out.append(s, run, to);
+    }
+
+    /**
+     * Shows a header, body and note in {@code pane} by replacing the text
+     * of the matching elements of its current {@link HTMLDocument}, so the
+     * document is neither re-parsed nor rebuilt. The text is inserted as
+     * is, not as markup. The pane is reset to a fixed layout the first time
+     * and whenever its text was replaced in some other way.
+     *
+     * @param pane a pane showing {@code text/html}
+     * @param header
+     * @param body
+     * @param note
+     */
+    static void update(JEditorPane pane, String header, String body, String note) {
+        Document doc = pane.getDocument();
+        if (!(doc instanceof HTMLDocument) || ((HTMLDocument) doc).getElement(HEADER_ID) == null) {
+            pane.setText(TEMPLATE);
+            doc = pane.getDocument();
+        }
+        HTMLDocument sections = (HTMLDocument) doc;
+        try {
+            replace(sections, HEADER_ID, header);
+            replace(sections, BODY_ID, body);
+            replace(sections, NOTE_ID, note);
+        } catch (BadLocationException ex) {
+            // Offsets come from the document itself
+            throw new IllegalStateException(ex);
+        }
+        pane.setCaretPosition(0);
+    }
+
+    private static void replace(HTMLDocument doc, String id, String text) throws BadLocationException {
+        Element section = doc.getElement(id);
+        int start = section.getStartOffset();
+        // Keep the newline that closes the block
+        int length = section.getEndOffset() - 1 - start;
+        if (doc.getText(start, length).equals(text)) {
+            return;
+        }
+        // Reuse the attributes of the existing text so it renders the same
+        AttributeSet attrs = doc.getCharacterElement(start).getAttributes().copyAttributes();
+        // An empty block would collapse and lose its id
+        doc.replace(start, length, text.isEmpty() ? "\u00a0" : text, attrs);
+    }
+}
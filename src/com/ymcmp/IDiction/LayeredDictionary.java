@@ -0,0 +1,469 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 plank.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ymcmp.IDiction;
+
+import java.util.AbstractList;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * A read-only {@link Dictionary} stacked from named segments, typically one
+ * per source file. Each segment keeps its own index; a lookup asks every
+ * segment in precedence order and concatenates what they hold, so segments
+ * in the order the files used to be merged answer exactly like the merged
+ * dictionary did. {@link #getSource(Object)} and
+ * {@link #getValuesBySource(Object)} tell which source a translation came
+ * from.
+ *
+ * Adding, replacing or dropping a segment publishes a new segment list with
+ * one atomic reference swap, leaving the other segments untouched, so it
+ * costs only the size of that segment and readers on other threads see
+ * either the old list or the new one. Segments must not be modified once
+ * added.
+ *
+ * @author plank
+ * @param <K>
+ * @param <V>
+ */
+public class LayeredDictionary<K, V> extends Dictionary<K, V> {
+
+    private static final class Segment<K, V> {
+
+        private final String name;
+        private final Dictionary<K, V> dict;
+        // Index of this segment's first entry in the whole dictionary
+        private final int offset;
+
+        private Segment(String name, Dictionary<K, V> dict, int offset) {
+            this.name = name;
+            this.dict = dict;
+            this.offset = offset;
+        }
+    }
+
+    // Highest precedence first; never modified once published
+    private final AtomicReference<List<Segment<K, V>>> segments = new AtomicReference<>(Collections.emptyList());
+
+    /**
+     * Adds {@code dict} with the lowest precedence, or replaces the segment
+     * already named {@code name} in its place.
+     *
+     * @param name
+     * @param dict
+     * @return the segment replaced, or null
+     */
+    public Dictionary<K, V> put(String name, Dictionary<K, V> dict) {
+        return edit((list) -> {
+            int at = indexOf(list, name);
+            if (at < 0) {
+                list.add(new Segment<>(name, dict, 0));
+                return null;
+            }
+            return list.set(at, new Segment<>(name, dict, 0)).dict;
+        });
+    }
+
+    /**
+     * Adds {@code dict} with the highest precedence, moving the segment
+     * already named {@code name} if there is one.
+     *
+     * @param name
+     * @param dict
+     * @return the segment replaced, or null
+     */
+    public Dictionary<K, V> putFirst(String name, Dictionary<K, V> dict) {
+        return edit((list) -> {
+            int at = indexOf(list, name);
+            Dictionary<K, V> old = at < 0 ? null : list.remove(at).dict;
+            list.add(0, new Segment<>(name, dict, 0));
+            return old;
+        });
+    }
+
+    /**
+     * Puts every segment of {@code changed} as {@link #put(String, Dictionary)}
+     * would, in iteration order, and publishes them together.
+     *
+     * @param changed
+     */
+    public void putAll(Map<String, ? extends Dictionary<K, V>> changed) {
+        edit((list) -> {
+            changed.forEach((name, dict) -> {
+                int at = indexOf(list, name);
+                if (at < 0) {
+                    list.add(new Segment<>(name, dict, 0));
+                } else {
+                    list.set(at, new Segment<>(name, dict, 0));
+                }
+            });
+            return null;
+        });
+    }
+
+    /**
+     * @param name
+     * @return the segment dropped, or null if there was none
+     */
+    public Dictionary<K, V> drop(String name) {
+        return edit((list) -> {
+            int at = indexOf(list, name);
+            return at < 0 ? null : list.remove(at).dict;
+        });
+    }
+
+    /**
+     * @param name
+     * @return the segment named {@code name}, or null
+     */
+    public Dictionary<K, V> getSegment(String name) {
+        List<Segment<K, V>> list = segments.get();
+        int at = indexOf(list, name);
+        return at < 0 ? null : list.get(at).dict;
+    }
+
+    /**
+     * @return segment names, highest precedence first
+     */
+    public List<String> getSources() {
+        List<String> names = new ArrayList<>();
+        segments.get().forEach((segment) -> names.add(segment.name));
+        return names;
+    }
+
+    /**
+     * @param key
+     * @return the name of the segment with the highest precedence mapping
+     * {@code key}, or null
+     */
+    public String getSource(K key) {
+        for (Segment<K, V> segment : segments.get()) {
+            if (segment.dict.containsKey(key)) {
+                return segment.name;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param value
+     * @return the name of the segment with the highest precedence mapping a
+     * key to {@code value}, or null
+     */
+    public String getValueSource(V value) {
+        for (Segment<K, V> segment : segments.get()) {
+            if (segment.dict.containsValue(value)) {
+                return segment.name;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param key
+     * @return segment name and values of every segment mapping {@code key},
+     * highest precedence first
+     */
+    public List<Map.Entry<String, List<V>>> getValuesBySource(K key) {
+        List<Map.Entry<String, List<V>>> found = new ArrayList<>();
+        for (Segment<K, V> segment : segments.get()) {
+            List<V> values = segment.dict.getValues(key);
+            if (values != null) {
+                found.add(new SimpleImmutableEntry<>(segment.name, values));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @param value
+     * @return segment name and keys of every segment mapping a key to
+     * {@code value}, highest precedence first
+     */
+    public List<Map.Entry<String, List<K>>> getKeysBySource(V value) {
+        List<Map.Entry<String, List<K>>> found = new ArrayList<>();
+        for (Segment<K, V> segment : segments.get()) {
+            List<K> keys = segment.dict.getKeys(value);
+            if (keys != null) {
+                found.add(new SimpleImmutableEntry<>(segment.name, keys));
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public boolean add(Map.Entry<K, V> newEntry) {
+        throw new UnsupportedOperationException("Layered dictionaries change by segment");
+    }
+
+    @Override
+    public boolean addAll(Collection<Map.Entry<K, V>> col) {
+        throw new UnsupportedOperationException("Layered dictionaries change by segment");
+    }
+
+    @Override
+    public void addAll(Map<K, V> map) {
+        throw new UnsupportedOperationException("Layered dictionaries change by segment");
+    }
+
+    @Override
+    public boolean remove(Map.Entry<K, V> entry) {
+        throw new UnsupportedOperationException("Layered dictionaries change by segment");
+    }
+
+    @Override
+    public int removeAll(Collection<Map.Entry<K, V>> col) {
+        throw new UnsupportedOperationException("Layered dictionaries change by segment");
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return getSource(key) != null;
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        return getValueSource(value) != null;
+    }
+
+    @Override
+    public Map.Entry<K, V> getIndex(int i) {
+        List<Segment<K, V>> list = segments.get();
+        for (int s = list.size() - 1; s >= 0; s--) {
+            Segment<K, V> segment = list.get(s);
+            if (i >= segment.offset) {
+                return segment.dict.getIndex(i - segment.offset);
+            }
+        }
+        throw new IndexOutOfBoundsException("Index: " + i);
+    }
+
+    @Override
+    public List<Map.Entry<K, V>> getRange(int low, int high) {
+        return view(segments.get()).subList(low, high);
+    }
+
+    @Override
+    public List<V> getValues() {
+        List<V> values = new ArrayList<>();
+        segments.get().forEach((segment) -> values.addAll(segment.dict.getValues()));
+        return values;
+    }
+
+    @Override
+    public List<K> getKeys() {
+        List<K> keys = new ArrayList<>();
+        segments.get().forEach((segment) -> keys.addAll(segment.dict.getKeys()));
+        return keys;
+    }
+
+    @Override
+    public List<V> getValues(K key) {
+        return merge(segments.get(), (dict) -> dict.getValues(key));
+    }
+
+    @Override
+    public List<K> getKeys(V value) {
+        return merge(segments.get(), (dict) -> dict.getKeys(value));
+    }
+
+    @Override
+    public void sort() {
+        throw new UnsupportedOperationException("Layered dictionaries change by segment");
+    }
+
+    @Override
+    public int removeDupByKey() {
+        throw new UnsupportedOperationException("Layered dictionaries change by segment");
+    }
+
+    @Override
+    public int removeDupByValue() {
+        throw new UnsupportedOperationException("Layered dictionaries change by segment");
+    }
+
+    @Override
+    public int removeDuplicates(Function<? super Map.Entry<K, V>, ?> identity, BinaryOperator<Map.Entry<K, V>> merge) {
+        throw new UnsupportedOperationException("Layered dictionaries change by segment");
+    }
+
+    @Override
+    public void trimToSize() {
+        // Segments are trimmed by whoever built them
+    }
+
+    @Override
+    public int size() {
+        return size(segments.get());
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public boolean contains(Map.Entry<K, V> o) {
+        for (Segment<K, V> segment : segments.get()) {
+            if (segment.dict.contains(o)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Object[] toArray() {
+        return view(segments.get()).toArray();
+    }
+
+    @Override
+    public <T> T[] toArray(T[] a) {
+        return view(segments.get()).toArray(a);
+    }
+
+    @Override
+    public void clear() {
+        segments.set(Collections.emptyList());
+    }
+
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return view(segments.get()).iterator();
+    }
+
+    @Override
+    public void forEach(Consumer<? super Map.Entry<K, V>> action) {
+        segments.get().forEach((segment) -> segment.dict.forEach(action));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return view(segments.get()).equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return 89 * 7 + view(segments.get()).hashCode();
+    }
+
+    @Override
+    public Stream<Map.Entry<K, V>> stream() {
+        return view(segments.get()).stream();
+    }
+
+    @Override
+    public Stream<Map.Entry<K, V>> parallelStream() {
+        return view(segments.get()).parallelStream();
+    }
+
+    // The segments' entries one after another, without copying them
+    private static <K, V> List<Map.Entry<K, V>> view(List<Segment<K, V>> list) {
+        int size = size(list);
+        return new AbstractList<Map.Entry<K, V>>() {
+
+            @Override
+            public Map.Entry<K, V> get(int i) {
+                if (i < 0 || i >= size) {
+                    throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+                }
+                for (int s = list.size() - 1; s >= 0; s--) {
+                    Segment<K, V> segment = list.get(s);
+                    if (i >= segment.offset) {
+                        return segment.dict.getIndex(i - segment.offset);
+                    }
+                }
+                throw new IllegalStateException();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private static <K, V> int size(List<Segment<K, V>> list) {
+        if (list.isEmpty()) {
+            return 0;
+        }
+        Segment<K, V> last = list.get(list.size() - 1);
+        return last.offset + last.dict.size();
+    }
+
+    // Only copies when more than one segment answers
+    private static <K, V, T> List<T> merge(List<Segment<K, V>> list, Function<Dictionary<K, V>, List<T>> lookup) {
+        List<T> first = null;
+        List<T> merged = null;
+        for (Segment<K, V> segment : list) {
+            List<T> found = lookup.apply(segment.dict);
+            if (found == null) {
+                continue;
+            }
+            if (first == null) {
+                first = found;
+            } else {
+                if (merged == null) {
+                    merged = new ArrayList<>(first);
+                }
+                merged.addAll(found);
+            }
+        }
+        return merged == null ? first : Collections.unmodifiableList(merged);
+    }
+
+    private static <K, V> int indexOf(List<Segment<K, V>> list, String name) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i).name.equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Single writer: copy the segment list, edit it, fix the offsets, publish
+    private synchronized <R> R edit(Function<List<Segment<K, V>>, R> change) {
+        List<Segment<K, V>> list = new ArrayList<>(segments.get());
+        R result = change.apply(list);
+        int offset = 0;
+        for (int i = 0; i < list.size(); i++) {
+            Segment<K, V> segment = list.get(i);
+            if (segment.offset != offset) {
+                list.set(i, new Segment<>(segment.name, segment.dict, offset));
+            }
+            offset += segment.dict.size();
+        }
+        segments.set(Collections.unmodifiableList(list));
+        return result;
+    }
+}
@@ -1,390 +1,582 @@
-/*
- * The MIT License
- *
- * Copyright 2015 plank.
- *
- * Permission is hereby granted, free of charge, to any person obtaining a copy
- * of this software and associated documentation files (the "Software"), to deal
- * in the Software without restriction, including without limitation the rights
- * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
- * copies of the Software, and to permit persons to whom the Software is
- * furnished to do so, subject to the following conditions:
- *
- * The above copyright notice and this permission notice shall be included in
- * all copies or substantial portions of the Software.
- *
- * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
- * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
- * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
- * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
- * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
- * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
- * THE SOFTWARE.
- */
-package com.ymcmp.IDiction;
-
-import java.awt.event.ActionEvent;
-import java.awt.event.KeyEvent;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.URL;
-import java.util.Collection;
-import java.util.List;
-import java.util.Properties;
-import java.util.TreeSet;
-import javax.swing.ButtonGroup;
-import javax.swing.JMenu;
-import javax.swing.JMenuItem;
-import javax.swing.JOptionPane;
-import javax.swing.JRadioButtonMenuItem;
-import javax.swing.KeyStroke;
-import javax.swing.UIManager;
-import javax.swing.UnsupportedLookAndFeelException;
-
-/**
- *
- * @author plank
- */
-public class Main {
-
-    private static final String HTML_HORIZN = "<hr />";
-    private static final Dictionary<Object, Object> GLB_DICTIONARY = new Dictionary<>();
-    private static final String[] FRESH_LIB_SRC = {
-        "https://raw.githubusercontent.com/plankp/Larjernok-de-Pjarg/master/src/com/ymcmp/IDiction/Library.properties",
-        "https://raw.githubusercontent.com/plankp/Larjernok-de-Pjarg/master/src/com/ymcmp/IDiction/Duplicates.properties",
-        "https://raw.githubusercontent.com/plankp/Larjernok-de-Pjarg/master/src/com/ymcmp/IDiction/Elements.properties"
-    };
-
-    static {
-        initLocalRead();
-    }
-
-    private static void initLocalRead() throws RuntimeException {
-        GLB_DICTIONARY.addAll(initRead("Library.properties"));
-        GLB_DICTIONARY.addAll(initRead("Duplicates.properties"));
-        GLB_DICTIONARY.addAll(initRead("Elements.properties"));
-    }
-
-    private static Properties initRead(String path) throws RuntimeException {
-        Properties prop = new Properties();
-        InputStream in = Main.class
-                .getResourceAsStream(path);
-
-        try {
-            prop.load(in);
-            in.close();
-        } catch (IOException ex) {
-            JOptionPane.showMessageDialog(null, "Cannot load nessesary files. Quitting");
-            throw new RuntimeException("Cannot load nessesary files. Quitting");
-        }
-        return prop;
-    }
-
-    /**
-     * @param args the command line arguments
-     */
-    public static void main(String[] args) {
-        // L&F
-        try {
-            System.out.println("Attempt to use System L&F");
-            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
-        } catch (ClassNotFoundException | InstantiationException | IllegalAccessException | UnsupportedLookAndFeelException ex) {
-            System.err.println("Fallback using Cross Platform L&F -> Metal");
-        }
-
-        new Screen("Custom Spoken Language Translator", "Plankp") {
-            private boolean isUpdating = false;
-            private boolean displayEnglish = true;
-
-            private void redrawWordList() {
-                this.getWordList().clear();
-                List<Object> append;
-                if (displayEnglish) {
-                    append = GLB_DICTIONARY.getKeys();
-                } else {
-                    append = GLB_DICTIONARY.getValues();
-                }
-                Collection<Object> set = new TreeSet<>(append);
-                this.getWordList().addAll(set);
-                this.setFooterText("Word count: " + set.size());
-                this.refreshWordList();
-            }
-
-            @Override
-            public void postInit() {
-                ButtonGroup bgroup = new ButtonGroup();
-                JRadioButtonMenuItem displayEng = new JRadioButtonMenuItem("Show English List", true);
-                JRadioButtonMenuItem displayPja = new JRadioButtonMenuItem("Show Pjarg List");
-                bgroup.add(displayEng);
-                bgroup.add(displayPja);
-
-                displayEng.setAccelerator(KeyStroke.getKeyStroke('E', KeyEvent.CTRL_DOWN_MASK, true));
-                displayPja.setAccelerator(KeyStroke.getKeyStroke('P', KeyEvent.CTRL_DOWN_MASK, true));
-
-                displayEng.addActionListener((ActionEvent e) -> {
-                    displayEnglish = true;
-                    redrawWordList();
-                });
-                displayPja.addActionListener((ActionEvent e) -> {
-                    displayEnglish = false;
-                    redrawWordList();
-                });
-
-                JMenu configMenu = new JMenu("Config");
-                configMenu.add(displayEng);
-                configMenu.add(displayPja);
-                this.addMenuToBar(configMenu);
-
-                JMenuItem sematicRules = new JMenuItem("Sematic rules");
-                sematicRules.addActionListener((ActionEvent e) -> {
-                    JOptionPane.showMessageDialog(null, "Here are some rules that can help you from messing up:\n"
-                            + "\"C\" is prononced as \"Ch\" in \"Cheese\" and \"CC\" is pronounced as \"K\"\n"
-                            + "Verbs do not have tenses not conjugation. They are always infinitive and time is what matters\n"
-                            + "Articles of the start of the phrase must be omitted\n"
-                            + "\"The\" does not exist because it is always omitted\n"
-                            + "During speech, \"He\" is always used (not \"She\" or \"It\"). Not during writing however\n"
-                            + "\"Pjok\" is pronounced like \"Peeyok\"");
-                });
-                sematicRules.setAccelerator(KeyStroke.getKeyStroke('R', KeyEvent.CTRL_DOWN_MASK, true));
-
-                JMenuItem updateDictionary = new JMenuItem("Check for update");
-                updateDictionary.setAccelerator(KeyStroke.getKeyStroke('U', KeyEvent.CTRL_DOWN_MASK, true));
-                updateDictionary.addActionListener((ActionEvent e) -> {
-                    if (!isUpdating) {
-                        System.out.println("Update started...");
-                        isUpdating = true;
-                        try {
-                            GLB_DICTIONARY.clear();
-                            for (String src : FRESH_LIB_SRC) {
-                                Properties newProp = readWebProp(src);
-                                System.out.println("Applying patch...");
-                                GLB_DICTIONARY.addAll(newProp);
-                                redrawWordList();
-                            }
-                            JOptionPane.showMessageDialog(null, "Update done");
-                        } catch (RuntimeException ex) {
-                            System.out.println("Update failed " + ex.getMessage());
-                            JOptionPane.showMessageDialog(null, "Update failed " + ex.getMessage());
-                            System.out.println("Re-invoke init read...");
-                            initLocalRead();
-                            this.getWordList().clear();
-
-                        }
-                        isUpdating = false;
-                    } else {
-                        JOptionPane.showMessageDialog(null, "Already started updating");
-                    }
-                });
-
-                this.getHelpMenu().add(updateDictionary);
-                this.getHelpMenu().add(sematicRules);
-
-                this.getWordList().addAll(new TreeSet<>(GLB_DICTIONARY.getKeys()));
-                this.setSearchFieldTooltip("Search from list / Trove de largern");
-                this.setDescriptionPaneText(HTMLDocument("Hello", "Welcome to the dictionary!!!") + HTMLDocument("Oi", "Welkomen ga larjernok!!!"));
-
-                displayEnglish = true;
-                redrawWordList();
-            }
-
-            private String appendPjargPlural(char last) {
-                String msg = "";
-                switch (last) {
-                case 's':
-                case 'v':
-                case 'g':
-                    msg += "e";
-                default:
-                    msg += "s";
-                }
-                return msg;
-            }
-
-            private String appendEngPlural(String last) {
-                if (last.equals("us")) {
-                    return "i";
-                }
-                if (last.equals("s") | last.equals("x")) {
-                    return "es";
-                }
-                return "s";
-            }
-
-            private List<Object> getVocab(String txt) {
-                return displayEnglish ? GLB_DICTIONARY.getValues(txt) : GLB_DICTIONARY.getKeys(stmtCase(txt));
-            }
-
-            private void appendText(String txt, StringBuilder sb) {
-                boolean caps = txt.matches("[A-Z].*");
-                txt = txt.toLowerCase();
-                List<Object> vList = getVocab(txt);
-                if (vList != null) {
-                    // word exists -- Append it
-                    AppendWordQuery(vList, caps, sb);
-                } else if (txt.matches(".+((e?s)|(i))")) {
-                    // Cannot find because of plural?
-                    String txt2 = "";
-                    if (txt.matches("e?s$")) {
-                        txt2 = txt.split("e?s$")[0];
-                    } else if (txt.matches("i$") && displayEnglish) {
-                        txt2 = txt.split("i$")[0] + "us";
-                    }
-                    vList = getVocab(txt2);
-                    if (vList != null) {
-                        // word exists -- Append it
-                        AppendWordQuery(vList, caps, sb);
-                        if (displayEnglish) {
-                            sb.append(appendPjargPlural(sb.charAt(sb.length() - 1)));
-                        } else {
-                            sb.append(appendEngPlural(sb.substring(sb.length() - 2)));
-                        }
-                    } else {
-                        txt2 = txt.split("s$")[0];
-                        vList = getVocab(txt2);
-                        if (vList != null) {
-                            // word exists -- Append it
-                            AppendWordQuery(vList, caps, sb);
-                            if (displayEnglish) {
-                                sb.append(appendPjargPlural(sb.charAt(sb.length() - 1)));
-                            } else {
-                                sb.append(appendEngPlural(sb.substring(sb.length() - 2)));
-                            }
-                        } else {
-                            invalidTerm(sb, caps, txt);
-                        }
-                    }
-                } else if (txt.endsWith(R_PHOBIA) && displayEnglish) {
-                    String fearType = txt.substring(0, txt.length() - R_PHOBIA.length());
-                    AppendWordQuery(getVocab(fearType), caps, sb);
-                    AppendWordQuery(getVocab(R_PHOBIA), caps, sb);
-
-                } else {
-                    invalidTerm(sb, caps, txt);
-                }
-            }
-            private static final String R_PHOBIA = "phobia";
-
-            private void invalidTerm(StringBuilder sb, boolean caps, String txt) {
-                // show word not found
-                sb.append("`");
-                if (!caps) {
-                    sb.append(txt);
-                } else {
-                    sb.append(stmtCase(txt));
-                }
-                sb.append("'");
-            }
-
-            @Override
-            public void querySearchField(String s) {
-                String[] wList = s.trim().split("\\s+");
-                // Parse: Hello people. -> ["Hello", "people."]
-                StringBuilder sb = new StringBuilder();
-                boolean nextwordCaps = false;
-                for (String txt : wList) {
-                    if (txt.trim().length() == 0 || txt.equals("the")) {
-                        continue; // the does not exist
-                    }
-                    if (txt.equals("The")) {
-                        nextwordCaps = true;
-                        continue;
-                    }
-                    String remain = "";
-                    if (txt.matches(".*\\W+$")) {
-                        // Parse: help?
-                        String[] txtSplit = txt.split("\\W+$");
-                        if (txtSplit.length > 0) {
-                            String splits = txtSplit[0];
-                            remain += txt.substring(splits.length());
-                            txt = splits;
-                        } else {
-                            sb.append(txt);
-                            continue;
-                        }
-                    }
-                    if (txt.trim().matches("\\d+(\\.\\d+)?$")) {
-                        sb.append(txt);
-                    } else {
-                        if (nextwordCaps) {
-                            txt = stmtCase(txt);
-                            nextwordCaps = false;
-                        }
-                        if (displayEnglish && (txt.endsWith("'s") || txt.endsWith("s'"))) {
-                            sb.append(txt.substring(0, txt.length() - 2)).append(" ");
-                            appendText(K_APOSTROPHE_S, sb);
-                        } else {
-                            appendText(txt, sb);
-                        }
-                    }
-                    sb.append(remain).append(" ");
-                }
-                String tmp = sb.toString();
-                sb.setLength(0);
-                sb.append(HTMLDocument(s, tmp + "<br />Words with ` ' do not exist. Mail 'plankp@outlook.com' about it..."));
-                this.setDescriptionPaneText(sb.toString());
-            }
-            private static final String K_APOSTROPHE_S = "-belong";
-
-            private void AppendWordQuery(List<Object> vList, boolean caps, StringBuilder sb) {
-                String tmp;
-                if (vList.size() == 1) {
-                    tmp = vList.get(0) + "";
-                    if (!caps) {
-                        tmp = tmp.toLowerCase();
-                    }
-                } else {
-                    tmp = vList + "";
-                }
-                sb.append(tmp);
-            }
-
-            private String stmtCase(String txt) {
-                if (txt == null || txt.length() == 0) {
-                    return txt;
-                }
-                if (txt.length() > 1) {
-                    return ("" + txt.charAt(0)).toUpperCase() + txt.substring(1);
-                } else {
-                    return txt.toUpperCase();
-                }
-            }
-
-            @Override
-            public void creditsItemAction(ActionEvent e) {
-                JOptionPane.showMessageDialog(null, CREDITS);
-            }
-            private static final String CREDITS = "People involved:\nPlankp, Anexb, Guiu, Ryan, Jliao";
-
-        };
-    }
-
-    private static Properties readWebProp(String rawUrl) {
-        Properties prop = new Properties();
-        try {
-            URL url = new URL(rawUrl);
-            try (InputStreamReader isr = new InputStreamReader(url.openStream())) {
-                prop.load(isr);
-            } // Just for auto close
-        } catch (IOException ex) {
-            throw new RuntimeException(ex);
-        }
-        return prop;
-    }
-
-    private static String HTMLDocument(String header, String body) {
-        return HTMLHeader(header) + HTML_HORIZN + body + "<br />";
-    }
-
-    private static String HTMLHeader(String s) {
-        return HTMLHeader(s, 1);
-    }
-
-    private static String HTMLHeader(String s, int level) {
-        if (level < 1 || level > 6) {
-            throw new IllegalArgumentException("Parameter `level' must be range 1..6:" + level);
-        }
-        String label = "h" + level + ">";
-        return "<" + label + s + "</" + label;
-    }
-}
+/*
+ * The MIT License
+ *
+ * Copyright 2015 plank.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ymcmp.IDiction;
+
+import java.awt.FontMetrics;
+import java.awt.GraphicsEnvironment;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.WindowEvent;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import javax.swing.ButtonGroup;
+import javax.swing.JMenu;
+import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
+import javax.swing.JRadioButtonMenuItem;
+import javax.swing.JTextField;
+import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
+import javax.swing.UIManager;
+import javax.swing.UnsupportedLookAndFeelException;
+
+/**
+ *
+ * @author plank
+ */
+public class Main {
+
+    private static final String UNKNOWN_NOTE = "Words with ` ' do not exist. Add them under Words, or mail 'plankp@outlook.com' about it...";
+    // Path of a vocabulary compiled by DictionaryCompiler, used instead of the bundled files
+    private static final String COMPILED_DICT_PROP = "idiction.dict";
+    // Comma separated URLs to update from instead of FRESH_LIB_SRC
+    private static final String SOURCES_PROP = "idiction.sources";
+    // Directory holding the last updated vocabulary, ~/.idiction by default
+    private static final String CACHE_DIR_PROP = "idiction.cache";
+    // Directory holding the words added by the user, ~/.idiction/user by default
+    private static final String USER_DIR_PROP = "idiction.user";
+    // Seconds between metrics printed to stderr, off by default
+    private static final String METRICS_PROP = "idiction.metrics";
+    // About a megabyte of recent queries and their translations
+    private static final int TRANSLATION_CACHE_CHARS = 1 << 19;
+    private static final String[] BUNDLED_SRC = {"Library.properties", "Duplicates.properties", "Elements.properties"};
+    // Segment names for the user's words and for a vocabulary that is not layered by source
+    private static final String USER_SEGMENT = "user";
+    private static final String VOCABULARY_SEGMENT = "vocabulary";
+    // The loaded or updated vocabulary, without the user's words
+    private static final AtomicReference<Dictionary<String, String>> VOCABULARY = new AtomicReference<>(new Dictionary<>());
+    // The user's words layered over VOCABULARY; empty until the first source has been loaded
+    private static final AtomicReference<Dictionary<String, String>> GLB_DICTIONARY = new AtomicReference<>(new Dictionary<>());
+    private static final ExecutorService SEARCH_EXECUTOR = Executors.newSingleThreadExecutor((Runnable r) -> {
+        Thread t = new Thread(r, "word-search");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final String[] FRESH_LIB_SRC = {
+        "https://raw.githubusercontent.com/plankp/Larjernok-de-Pjarg/master/src/com/ymcmp/IDiction/Library.properties",
+        "https://raw.githubusercontent.com/plankp/Larjernok-de-Pjarg/master/src/com/ymcmp/IDiction/Duplicates.properties",
+        "https://raw.githubusercontent.com/plankp/Larjernok-de-Pjarg/master/src/com/ymcmp/IDiction/Elements.properties"
+    };
+
+    private static final DictionaryCache CACHE = new DictionaryCache(Paths.get(System.getProperty(CACHE_DIR_PROP,
+            Paths.get(System.getProperty("user.home"), ".idiction").toString())));
+    private static final DictionaryUpdater UPDATER = new DictionaryUpdater(updateSources(), VOCABULARY);
+    // Opened by main, for writing only by the window and the commands that change them; null if they could not be
+    private static final CompletableFuture<UserVocabulary> USER_WORDS = new CompletableFuture<>();
+
+    private static UserVocabulary openUserWords(boolean writable) {
+        Path dir = Paths.get(System.getProperty(USER_DIR_PROP,
+                Paths.get(System.getProperty("user.home"), ".idiction", "user").toString()));
+        try {
+            if (!writable) {
+                return UserVocabulary.openReadOnly(dir);
+            }
+            UserVocabulary words = UserVocabulary.open(dir);
+            if (words.isReadOnly()) {
+                System.err.println("Your words in " + dir + " are open in another process and cannot be changed here");
+            }
+            return words;
+        } catch (IOException ex) {
+            System.err.println("Cannot open your words in " + dir + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+    // The user's words over the vocabulary, answering first
+    private static Dictionary<String, String> withUserWords(Dictionary<String, String> vocabulary) {
+        LayeredDictionary<String, String> dict = new LayeredDictionary<>();
+        if (vocabulary instanceof LayeredDictionary) {
+            LayeredDictionary<String, String> layered = (LayeredDictionary<String, String>) vocabulary;
+            for (String source : layered.getSources()) {
+                dict.put(source, layered.getSegment(source));
+            }
+        } else {
+            dict.put(VOCABULARY_SEGMENT, vocabulary);
+        }
+        UserVocabulary user = USER_WORDS.join();
+        if (user != null) {
+            dict.putFirst(USER_SEGMENT, user.getDictionary());
+        }
+        return dict;
+    }
+
+    private static List<URL> updateSources() {
+        String[] raw = System.getProperty(SOURCES_PROP, String.join(",", FRESH_LIB_SRC)).split(",");
+        List<URL> urls = new ArrayList<>(raw.length);
+        for (String src : raw) {
+            try {
+                urls.add(new URL(src.trim()));
+            } catch (MalformedURLException ex) {
+                throw new IllegalArgumentException("Bad update source " + src, ex);
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Loads the vocabulary in the background. {@code stage} is called with a
+     * dictionary of every source loaded so far, in source order, under the
+     * user's words, and whether it is the last one. Calls never overlap and
+     * the dictionaries passed are not modified afterwards.
+     */
+    private static void loadLocal(BiConsumer<Dictionary<String, String>, Boolean> onStage) {
+        long started = System.nanoTime();
+        BiConsumer<Dictionary<String, String>, Boolean> stage = (dict, done) -> {
+            VOCABULARY.set(dict);
+            Dictionary<String, String> withUser = withUserWords(dict);
+            if (done) {
+                Metrics.GLOBAL.loaded(System.nanoTime() - started);
+            }
+            onStage.accept(withUser, done);
+        };
+        CompletableFuture.runAsync(() -> {
+            String compiled = System.getProperty(COMPILED_DICT_PROP);
+            if (compiled != null) {
+                try {
+                    stage.accept(MappedDictionary.open(Paths.get(compiled)), true);
+                    return;
+                } catch (IOException ex) {
+                    System.err.println("Cannot map " + compiled + ", falling back to bundled files: " + ex.getMessage());
+                }
+            }
+            // A cache older than the bundled files predates this build and is stale
+            Dictionary<String, String> cached = CACHE.load(bundledLastModified());
+            if (cached != null) {
+                stage.accept(cached, true);
+                return;
+            }
+            // Parse the bundled files in parallel into one segment each; every one finished publishes
+            // a dictionary layering all segments so far, so earlier ones are never copied again
+            List<Dictionary<String, String>> parsed = new ArrayList<>(Collections.nCopies(BUNDLED_SRC.length, null));
+            for (int i = 0; i < BUNDLED_SRC.length; i++) {
+                int source = i;
+                CompletableFuture.supplyAsync(() -> segment(initRead(BUNDLED_SRC[source]))).thenAccept((segment) -> {
+                    synchronized (parsed) {
+                        parsed.set(source, segment);
+                        // Named like the update sources, so updates replace only the segments that changed
+                        LayeredDictionary<String, String> dict = new LayeredDictionary<>();
+                        for (int j = 0; j < parsed.size(); j++) {
+                            if (parsed.get(j) != null) {
+                                dict.put(BUNDLED_SRC[j], parsed.get(j));
+                            }
+                        }
+                        boolean done = !parsed.contains(null);
+                        if (done && System.getProperty(SOURCES_PROP) == null) {
+                            // The bundled files are what FRESH_LIB_SRC held at build time; updates only send the difference
+                            for (int j = 0; j < parsed.size(); j++) {
+                                UPDATER.seed(j, parsed.get(j).getRange(0, parsed.get(j).size()));
+                            }
+                        }
+                        stage.accept(dict, done);
+                    }
+                }).exceptionally((ex) -> {
+                    ex.printStackTrace();
+                    System.exit(1);
+                    return null;
+                });
+            }
+        }).exceptionally((ex) -> {
+            // Otherwise a headless caller waits for a dictionary forever
+            ex.printStackTrace();
+            System.exit(1);
+            return null;
+        });
+    }
+
+    private static Dictionary<String, String> segment(List<Map.Entry<String, String>> entries) {
+        Dictionary<String, String> dict = new Dictionary<>();
+        dict.addAll(entries);
+        dict.trimToSize();
+        return dict;
+    }
+
+    private static long bundledLastModified() {
+        long time = 0;
+        for (String path : BUNDLED_SRC) {
+            URL url = Main.class.getResource(path);
+            if (url == null) {
+                // Reported by initRead
+                continue;
+            }
+            try {
+                URLConnection conn = url.openConnection();
+                time = Math.max(time, conn.getLastModified());
+            } catch (IOException ex) {
+                System.err.println("Cannot stat " + path + ": " + ex.getMessage());
+            }
+        }
+        return time;
+    }
+
+    // Entries of a bundled file, each key once
+    static List<Map.Entry<String, String>> initRead(String path) throws RuntimeException {
+        try {
+            URL url = Main.class.getResource(path);
+            if (url == null) {
+                throw new FileNotFoundException(path);
+            }
+            return PropertiesParser.entries(PropertiesParser.read(url));
+        } catch (IOException ex) {
+            // Without a display the dialog would throw and hide the cause
+            if (!GraphicsEnvironment.isHeadless()) {
+                JOptionPane.showMessageDialog(null, "Cannot load nessesary files. Quitting");
+            }
+            throw new RuntimeException("Cannot load nessesary files. Quitting", ex);
+        }
+    }
+
+    /**
+     * @param args the command line arguments; none opens the window
+     */
+    public static void main(String[] args) {
+        Metrics.GLOBAL.setVocabularySize(() -> GLB_DICTIONARY.get().size());
+        String dumpEvery = System.getProperty(METRICS_PROP);
+        if (dumpEvery != null) {
+            Metrics.registerMBean();
+            Metrics.GLOBAL.startDump(Long.parseLong(dumpEvery), System.err);
+        } else if (args.length == 0) {
+            // Starting JMX takes a quarter second, too long to hold up the window or a one-shot command
+            CompletableFuture.runAsync(Metrics::registerMBean);
+        }
+
+        // Only the window and the commands that change them lock the user's words; the rest read them as they are
+        boolean writable = args.length == 0 || CommandLine.changesWords(args);
+        CompletableFuture.runAsync(() -> USER_WORDS.complete(openUserWords(writable)));
+
+        if (args.length > 0) {
+            // Headless: see CommandLine for the commands
+            CompletableFuture<Dictionary<String, String>> loaded = new CompletableFuture<>();
+            loadLocal((dict, done) -> {
+                if (done) {
+                    GLB_DICTIONARY.set(dict);
+                    loaded.complete(dict);
+                }
+            });
+            System.exit(CommandLine.run(args, loaded.join(), USER_WORDS.join()));
+        }
+
+        // L&F
+        try {
+            System.out.println("Attempt to use System L&F");
+            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
+        } catch (ClassNotFoundException | InstantiationException | IllegalAccessException | UnsupportedLookAndFeelException ex) {
+            System.err.println("Fallback using Cross Platform L&F -> Metal");
+        }
+
+        new Screen("Custom Spoken Language Translator", "Plankp") {
+            private boolean isUpdating = false;
+            private boolean isLoading;
+            private boolean displayEnglish = true;
+            // Assigned from postInit, before field initializers run, so must not have one
+            private PrefixIndex englishIndex;
+            private PrefixIndex pjargIndex;
+            private String englishWidest;
+            private String pjargWidest;
+            private Translator toPjarg;
+            private Translator toEnglish;
+            private final AtomicInteger searchSeq = new AtomicInteger();
+            // Emptied whenever it is asked with another translator, so after every reindex or toggle
+            private final TranslationCache translations = new TranslationCache(TRANSLATION_CACHE_CHARS);
+
+            private void reindex() {
+                reindex(null);
+            }
+
+            // Rebuilds both sorted word lists and translators after the dictionary changed. Sorting every
+            // word is done on the search thread; the EDT only installs the finished indexes, in order
+            private void reindex(Runnable whenSuggesting) {
+                Dictionary<String, String> dict = GLB_DICTIONARY.get();
+                FontMetrics metrics = getWordListFontMetrics();
+                SEARCH_EXECUTOR.execute(() -> {
+                    PrefixIndex english = new PrefixIndex(dict.getKeys());
+                    PrefixIndex pjarg = new PrefixIndex(dict.getValues());
+                    String englishWide = english.widest(metrics::stringWidth);
+                    String pjargWide = pjarg.widest(metrics::stringWidth);
+                    Translator plainToPjarg = new Translator(dict, Translator.Direction.ENGLISH_TO_PJARG);
+                    Translator plainToEnglish = new Translator(dict, Translator.Direction.PJARG_TO_ENGLISH);
+                    SwingUtilities.invokeLater(() -> {
+                        englishIndex = english;
+                        pjargIndex = pjarg;
+                        englishWidest = englishWide;
+                        pjargWidest = pjargWide;
+                        toPjarg = plainToPjarg;
+                        toEnglish = plainToEnglish;
+                        redrawWordList();
+                    });
+
+                    // "Did you mean" suggestions once their indexes are built
+                    FuzzyIndex englishFuzzy = new FuzzyIndex(english.words());
+                    FuzzyIndex pjargFuzzy = new FuzzyIndex(pjarg.words());
+                    SwingUtilities.invokeLater(() -> {
+                        if (english == englishIndex) {
+                            toPjarg = plainToPjarg.withSuggestions(englishFuzzy);
+                            toEnglish = plainToEnglish.withSuggestions(pjargFuzzy);
+                            if (whenSuggesting != null) {
+                                whenSuggesting.run();
+                            }
+                        }
+                    });
+                });
+            }
+
+            // Snapshots the vocabulary on the EDT, then writes it to disk in the background;
+            // the user's words are kept on their own
+            private void saveCache() {
+                Dictionary<String, String> dict = VOCABULARY.get();
+                List<Map.Entry<String, String>> snapshot = new ArrayList<>(dict.getRange(0, dict.size()));
+                CompletableFuture.runAsync(() -> {
+                    try {
+                        CACHE.store(snapshot);
+                    } catch (IOException ex) {
+                        System.err.println("Cannot write cache " + CACHE.getFile() + ": " + ex.getMessage());
+                    }
+                });
+            }
+
+            // English and Pjarg typed into a dialog, or null if cancelled or left blank
+            private Map.Entry<String, String> askWord(String title) {
+                JTextField english = new JTextField(20);
+                JTextField pjarg = new JTextField(20);
+                int option = JOptionPane.showConfirmDialog(null, new Object[]{"English", english, "Pjarg", pjarg},
+                        title, JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+                return option == JOptionPane.OK_OPTION ? UserVocabulary.word(english.getText(), pjarg.getText()) : null;
+            }
+
+            // Adds or removes one of the user's words; the lists are redrawn once it is on disk
+            private void changeWord(boolean add) {
+                UserVocabulary user = USER_WORDS.getNow(null);
+                if (isLoading) {
+                    JOptionPane.showMessageDialog(null, "Still loading the dictionary");
+                    return;
+                }
+                if (user == null || user.isReadOnly()) {
+                    JOptionPane.showMessageDialog(null, "Your words cannot be changed, see the console for why");
+                    return;
+                }
+                Map.Entry<String, String> word = askWord(add ? "Add word" : "Remove word");
+                if (word == null) {
+                    return;
+                }
+                if (!add && !user.getDictionary().contains(word)) {
+                    JOptionPane.showMessageDialog(null, "Only words you added can be removed");
+                    return;
+                }
+                (add ? user.add(word) : user.remove(word)).whenComplete((ok, ex) -> SwingUtilities.invokeLater(() -> {
+                    if (ex != null) {
+                        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                        JOptionPane.showMessageDialog(null, "Cannot save your words " + cause.getMessage());
+                        return;
+                    }
+                    GLB_DICTIONARY.set(withUserWords(VOCABULARY.get()));
+                    reindex();
+                }));
+            }
+
+            private void redrawWordList() {
+                PrefixIndex index = wordIndex();
+                if (index == null) {
+                    // Not indexed yet, reindex draws it
+                    return;
+                }
+                this.setWordListModel(new WordListModel(index), widestWord());
+                this.setFooterText((isLoading ? "Loading... word count: " : "Word count: ") + index.size());
+            }
+
+            // The window is shown before any vocabulary is read; word lists fill in as sources finish
+            private void loadVocabulary() {
+                isLoading = true;
+                reindex();
+                loadLocal((dict, done) -> SwingUtilities.invokeLater(() -> {
+                    GLB_DICTIONARY.set(dict);
+                    isLoading = !done;
+                    if (!done) {
+                        reindex();
+                        return;
+                    }
+                    reindex(() -> System.out.println("Fully indexed " + dict.size() + " entries after "
+                            + ManagementFactory.getRuntimeMXBean().getUptime() + " ms"));
+                }));
+            }
+
+            @Override
+            public void windowOpened(WindowEvent e) {
+                System.out.println("First frame after " + ManagementFactory.getRuntimeMXBean().getUptime() + " ms");
+            }
+
+            private PrefixIndex wordIndex() {
+                return displayEnglish ? englishIndex : pjargIndex;
+            }
+
+            private String widestWord() {
+                return displayEnglish ? englishWidest : pjargWidest;
+            }
+
+            @Override
+            public void searchFieldChanged(String text) {
+                // Narrow the word list off the EDT; only the latest request is shown
+                PrefixIndex index = wordIndex();
+                int seq = searchSeq.incrementAndGet();
+                if (index == null) {
+                    return;
+                }
+                String prefix = text.trim();
+                SEARCH_EXECUTOR.execute(() -> {
+                    WordListModel model = prefix.isEmpty() ? new WordListModel(index) : WordListModel.startingWith(index, prefix);
+                    SwingUtilities.invokeLater(() -> {
+                        if (seq == searchSeq.get() && index == wordIndex()) {
+                            this.setWordListModel(model, widestWord());
+                        }
+                    });
+                });
+            }
+
+            @Override
+            public void postInit() {
+                ButtonGroup bgroup = new ButtonGroup();
+                JRadioButtonMenuItem displayEng = new JRadioButtonMenuItem("Show English List", true);
+                JRadioButtonMenuItem displayPja = new JRadioButtonMenuItem("Show Pjarg List");
+                bgroup.add(displayEng);
+                bgroup.add(displayPja);
+
+                displayEng.setAccelerator(KeyStroke.getKeyStroke('E', KeyEvent.CTRL_DOWN_MASK, true));
+                displayPja.setAccelerator(KeyStroke.getKeyStroke('P', KeyEvent.CTRL_DOWN_MASK, true));
+
+                displayEng.addActionListener((ActionEvent e) -> {
+                    displayEnglish = true;
+                    redrawWordList();
+                });
+                displayPja.addActionListener((ActionEvent e) -> {
+                    displayEnglish = false;
+                    redrawWordList();
+                });
+
+                JMenu configMenu = new JMenu("Config");
+                configMenu.add(displayEng);
+                configMenu.add(displayPja);
+                this.addMenuToBar(configMenu);
+
+                JMenuItem sematicRules = new JMenuItem("Sematic rules");
+                sematicRules.addActionListener((ActionEvent e) -> {
+                    JOptionPane.showMessageDialog(null, "Here are some rules that can help you from messing up:\n"
+                            + "\"C\" is prononced as \"Ch\" in \"Cheese\" and \"CC\" is pronounced as \"K\"\n"
+                            + "Verbs do not have tenses not conjugation. They are always infinitive and time is what matters\n"
+                            + "Articles of the start of the phrase must be omitted\n"
+                            + "\"The\" does not exist because it is always omitted\n"
+                            + "During speech, \"He\" is always used (not \"She\" or \"It\"). Not during writing however\n"
+                            + "\"Pjok\" is pronounced like \"Peeyok\"");
+                });
+                sematicRules.setAccelerator(KeyStroke.getKeyStroke('R', KeyEvent.CTRL_DOWN_MASK, true));
+
+                JMenuItem updateDictionary = new JMenuItem("Check for update");
+                updateDictionary.setAccelerator(KeyStroke.getKeyStroke('U', KeyEvent.CTRL_DOWN_MASK, true));
+                updateDictionary.addActionListener((ActionEvent e) -> {
+                    if (isLoading) {
+                        JOptionPane.showMessageDialog(null, "Still loading the dictionary");
+                    } else if (!isUpdating) {
+                        System.out.println("Update started...");
+                        isUpdating = true;
+                        // Downloads run in the background; changed entries are published atomically
+                        UPDATER.update().whenComplete((delta, ex) -> SwingUtilities.invokeLater(() -> {
+                            isUpdating = false;
+                            if (ex != null) {
+                                Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                                System.out.println("Update failed " + cause.getMessage());
+                                JOptionPane.showMessageDialog(null, "Update failed " + cause.getMessage());
+                                return;
+                            }
+                            if (delta.isEmpty()) {
+                                JOptionPane.showMessageDialog(null, "Already up to date");
+                                return;
+                            }
+                            System.out.println("Applied " + delta.getAdded().size() + " additions, " + delta.getRemoved().size() + " removals");
+                            GLB_DICTIONARY.set(withUserWords(VOCABULARY.get()));
+                            reindex();
+                            saveCache();
+                            JOptionPane.showMessageDialog(null, "Update done");
+                        }));
+                    } else {
+                        JOptionPane.showMessageDialog(null, "Already started updating");
+                    }
+                });
+
+                JMenuItem addWord = new JMenuItem("Add word");
+                addWord.setAccelerator(KeyStroke.getKeyStroke('N', KeyEvent.CTRL_DOWN_MASK, true));
+                addWord.addActionListener((ActionEvent e) -> changeWord(true));
+                JMenuItem removeWord = new JMenuItem("Remove word");
+                removeWord.setAccelerator(KeyStroke.getKeyStroke('D', KeyEvent.CTRL_DOWN_MASK, true));
+                removeWord.addActionListener((ActionEvent e) -> changeWord(false));
+
+                JMenu wordsMenu = new JMenu("Words");
+                wordsMenu.add(addWord);
+                wordsMenu.add(removeWord);
+                this.addMenuToBar(wordsMenu);
+
+                this.getHelpMenu().add(updateDictionary);
+                this.getHelpMenu().add(sematicRules);
+
+                this.setSearchFieldTooltip("Search from list / Trove de largern");
+                this.setDescriptionPaneText(new HtmlRenderer()
+                        .section("Hello", "Welcome to the dictionary!!!")
+                        .section("Oi", "Welkomen ga larjernok!!!")
+                        .html().toString());
+
+                displayEnglish = true;
+                loadVocabulary();
+            }
+
+            @Override
+            public void querySearchField(String s) {
+                if (toPjarg == null) {
+                    return;
+                }
+                this.setDescription(s, translations.translate(displayEnglish ? toPjarg : toEnglish, s), UNKNOWN_NOTE);
+            }
+
+            @Override
+            public void creditsItemAction(ActionEvent e) {
+                JOptionPane.showMessageDialog(null, CREDITS);
+            }
+            private static final String CREDITS = "People involved:\nPlankp, Anexb, Guiu, Ryan, Jliao";
+
+        };
+    }
+}
@@ -0,0 +1,375 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 plank.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ymcmp.IDiction;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * A read-only {@link Dictionary} over a file written by
+ * {@link DictionaryCompiler}. The file is memory mapped and every lookup is
+ * a binary search straight over the mapped pages, so opening it only costs
+ * the header check. Entries are ordered by key.
+ *
+ * @author plank
+ */
+public class MappedDictionary extends Dictionary<String, String> {
+
+    static final int MAGIC = 0x504A4443; // "PJDC"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    // Header: magic, version, string count, entry count, string data offset,
+    // forward index offset, reverse index offset, CRC32 of everything after the header
+    static final int H_STRINGS = 8;
+    static final int H_ENTRIES = 12;
+    static final int H_DATA = 16;
+    static final int H_FORWARD = 20;
+    static final int H_REVERSE = 24;
+    static final int H_CHECKSUM = 28;
+
+    private final ByteBuffer buffer;
+    private final int strCount;
+    private final int entCount;
+    private final int dataOff;
+    private final int fwdOff;
+    private final int revOff;
+
+    private MappedDictionary(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a compiled dictionary");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported dictionary version " + buffer.getInt(4));
+        }
+        strCount = buffer.getInt(H_STRINGS);
+        entCount = buffer.getInt(H_ENTRIES);
+        dataOff = buffer.getInt(H_DATA);
+        fwdOff = buffer.getInt(H_FORWARD);
+        revOff = buffer.getInt(H_REVERSE);
+        if (strCount < 0 || entCount < 0 || dataOff != HEADER_SIZE + 4 * (strCount + 1)
+                || dataOff > buffer.capacity() || fwdOff < dataOff + buffer.getInt(dataOff - 4)
+                || revOff != fwdOff + 8 * entCount || (long) revOff + 8L * entCount != buffer.capacity()) {
+            throw new IOException("Corrupted dictionary header");
+        }
+    }
+
+    public static MappedDictionary open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedDictionary(mapped);
+        }
+    }
+
+    public int checksum() {
+        return buffer.getInt(H_CHECKSUM);
+    }
+
+    /**
+     * Reads the whole file once to compare it against its checksum.
+     *
+     * @return false if the file was damaged after it was written
+     */
+    public boolean verify() {
+        ByteBuffer body = buffer.duplicate();
+        body.position(HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue() == checksum();
+    }
+
+    @Override
+    public boolean add(Map.Entry<String, String> newEntry) {
+        throw new UnsupportedOperationException("Compiled dictionaries are read-only");
+    }
+
+    @Override
+    public boolean addAll(Collection<Map.Entry<String, String>> col) {
+        throw new UnsupportedOperationException("Compiled dictionaries are read-only");
+    }
+
+    @Override
+    public void addAll(Map<String, String> map) {
+        throw new UnsupportedOperationException("Compiled dictionaries are read-only");
+    }
+
+    @Override
+    public boolean remove(Map.Entry<String, String> entry) {
+        throw new UnsupportedOperationException("Compiled dictionaries are read-only");
+    }
+
+    @Override
+    public int removeAll(Collection<Map.Entry<String, String>> col) {
+        throw new UnsupportedOperationException("Compiled dictionaries are read-only");
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        return first(fwdOff, find(key)) >= 0;
+    }
+
+    @Override
+    public boolean containsValue(String value) {
+        return first(revOff, find(value)) >= 0;
+    }
+
+    @Override
+    public Map.Entry<String, String> getIndex(int i) {
+        if (i < 0 || i >= entCount) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + entCount);
+        }
+        int pos = fwdOff + 8 * i;
+        return new SimpleImmutableEntry<>(decode(buffer.getInt(pos)), decode(buffer.getInt(pos + 4)));
+    }
+
+    @Override
+    public List<Map.Entry<String, String>> getRange(int low, int high) {
+        if (low < 0 || high > entCount || low > high) {
+            throw new IndexOutOfBoundsException("Range: " + low + ".." + high + ", Size: " + entCount);
+        }
+        return new AbstractList<Map.Entry<String, String>>() {
+            @Override
+            public Map.Entry<String, String> get(int index) {
+                if (index < 0 || index >= high - low) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (high - low));
+                }
+                return getIndex(low + index);
+            }
+
+            @Override
+            public int size() {
+                return high - low;
+            }
+        };
+    }
+
+    @Override
+    public List<String> getValues() {
+        return column(fwdOff + 4);
+    }
+
+    @Override
+    public List<String> getKeys() {
+        return column(fwdOff);
+    }
+
+    @Override
+    public List<String> getValues(String key) {
+        return collect(fwdOff, find(key));
+    }
+
+    @Override
+    public List<String> getKeys(String value) {
+        return collect(revOff, find(value));
+    }
+
+    @Override
+    public void sort() {
+        // Already sorted by key
+    }
+
+    @Override
+    public int removeDupByKey() {
+        throw new UnsupportedOperationException("Compiled dictionaries are read-only");
+    }
+
+    @Override
+    public int removeDupByValue() {
+        throw new UnsupportedOperationException("Compiled dictionaries are read-only");
+    }
+
+    @Override
+    public int removeDuplicates(Function<? super Map.Entry<String, String>, ?> identity, BinaryOperator<Map.Entry<String, String>> merge) {
+        throw new UnsupportedOperationException("Compiled dictionaries are read-only");
+    }
+
+    @Override
+    public void trimToSize() {
+        // Nothing to trim
+    }
+
+    @Override
+    public int size() {
+        return entCount;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return entCount == 0;
+    }
+
+    @Override
+    public boolean contains(Map.Entry<String, String> o) {
+        List<String> values = getValues(o.getKey());
+        return values != null && values.contains(o.getValue());
+    }
+
+    @Override
+    public Object[] toArray() {
+        return getRange(0, entCount).toArray();
+    }
+
+    @Override
+    public <T> T[] toArray(T[] a) {
+        return getRange(0, entCount).toArray(a);
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("Compiled dictionaries are read-only");
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> iterator() {
+        return getRange(0, entCount).iterator();
+    }
+
+    @Override
+    public void forEach(Consumer<? super Map.Entry<String, String>> action) {
+        for (int i = 0; i < entCount; i++) {
+            action.accept(getIndex(i));
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return getRange(0, entCount).equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return 89 * 7 + getRange(0, entCount).hashCode();
+    }
+
+    @Override
+    public Stream<Map.Entry<String, String>> stream() {
+        return IntStream.range(0, entCount).mapToObj(this::getIndex);
+    }
+
+    @Override
+    public Stream<Map.Entry<String, String>> parallelStream() {
+        return stream().parallel();
+    }
+
+    private List<String> column(int base) {
+        List<String> list = new ArrayList<>(entCount);
+        for (int i = 0; i < entCount; i++) {
+            list.add(decode(buffer.getInt(base + 8 * i)));
+        }
+        return list;
+    }
+
+    private List<String> collect(int base, int id) {
+        int i = first(base, id);
+        if (i < 0) {
+            return null;
+        }
+        List<String> list = new ArrayList<>(1);
+        for (; i < entCount && buffer.getInt(base + 8 * i) == id; i++) {
+            list.add(decode(buffer.getInt(base + 8 * i + 4)));
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    // Index of the first pair in the section whose leading id is `id', or -1
+    private int first(int base, int id) {
+        if (id < 0) {
+            return -1;
+        }
+        int low = 0;
+        int high = entCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (buffer.getInt(base + 8 * mid) < id) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low < entCount && buffer.getInt(base + 8 * low) == id ? low : -1;
+    }
+
+    // Id of the string in the sorted string table, or -1
+    private int find(String s) {
+        if (s == null) {
+            return -1;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = strCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(mid, bytes);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int compare(int id, byte[] bytes) {
+        int start = dataOff + buffer.getInt(HEADER_SIZE + 4 * id);
+        int len = buffer.getInt(HEADER_SIZE + 4 * (id + 1)) - buffer.getInt(HEADER_SIZE + 4 * id);
+        int n = Math.min(len, bytes.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = (buffer.get(start + i) & 0xFF) - (bytes[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return len - bytes.length;
+    }
+
+    private String decode(int id) {
+        int start = buffer.getInt(HEADER_SIZE + 4 * id);
+        byte[] bytes = new byte[buffer.getInt(HEADER_SIZE + 4 * (id + 1)) - start];
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(dataOff + start);
+        slice.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
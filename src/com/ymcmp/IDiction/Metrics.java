@@ -0,0 +1,282 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 plank.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ymcmp.IDiction;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and timings of the translation path, shared by the whole
+ * process through {@link #GLOBAL}. Recording only touches striped counters
+ * and a {@link LatencyHistogram}, so it is cheap enough to stay on in the
+ * translation loop.
+ *
+ * Read them over JMX as {@code com.ymcmp.IDiction:type=Metrics} or have
+ * them printed every few seconds with {@link #startDump(long, PrintStream)}.
+ *
+ * @author plank
+ */
+public class Metrics implements MetricsMXBean {
+
+    /**
+     * How {@link Translator} resolved a word. Only {@code DIRECT} is a hit
+     * of the word's own dictionary lookup; the others fell back to the
+     * morphology rules, successfully or not.
+     */
+    public enum Resolution {
+        DIRECT, PLURAL, AFFIX, UNKNOWN
+    }
+
+    private static final Resolution[] RESOLUTIONS = Resolution.values();
+
+    // After the constants its constructor uses
+    public static final Metrics GLOBAL = new Metrics();
+    public static final String OBJECT_NAME = "com.ymcmp.IDiction:type=Metrics";
+
+    private final LongAdder[] resolutions = new LongAdder[RESOLUTIONS.length];
+    private final LatencyHistogram queryLatency = new LatencyHistogram();
+    private final AtomicLong lastLoad = new AtomicLong(-1);
+    private final AtomicLong lastUpdate = new AtomicLong(-1);
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private volatile IntSupplier vocabularySize = () -> -1;
+
+    public Metrics() {
+        for (int i = 0; i < resolutions.length; i++) {
+            resolutions[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records one translated query with how many of its words were resolved
+     * each way.
+     *
+     * @param nanos how long it took
+     * @param direct
+     * @param plural
+     * @param affix
+     * @param unknown
+     */
+    public void query(long nanos, int direct, int plural, int affix, int unknown) {
+        queryLatency.record(nanos);
+        add(Resolution.DIRECT, direct);
+        add(Resolution.PLURAL, plural);
+        add(Resolution.AFFIX, affix);
+        add(Resolution.UNKNOWN, unknown);
+    }
+
+    private void add(Resolution how, int words) {
+        if (words != 0) {
+            resolutions[how.ordinal()].add(words);
+        }
+    }
+
+    /**
+     * Records one query asked of a {@link TranslationCache}.
+     *
+     * @param hit whether it was answered from the cache
+     */
+    public void cached(boolean hit) {
+        (hit ? cacheHits : cacheMisses).increment();
+    }
+
+    public void loaded(long nanos) {
+        lastLoad.set(TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    public void updated(long nanos) {
+        lastUpdate.set(TimeUnit.NANOSECONDS.toMillis(nanos));
+        updates.increment();
+    }
+
+    public void setVocabularySize(IntSupplier size) {
+        vocabularySize = size;
+    }
+
+    public LatencyHistogram getQueryLatency() {
+        return queryLatency;
+    }
+
+    /**
+     * Registers {@link #GLOBAL} with the platform MBean server, once.
+     */
+    public static synchronized void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(GLOBAL, name);
+            }
+        } catch (JMException ex) {
+            System.err.println("Cannot register metrics: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Prints {@link #getReport()} to {@code out} every {@code seconds} on a
+     * daemon thread.
+     *
+     * @return stop it with {@code shutdown()}
+     */
+    public ScheduledExecutorService startDump(long seconds, PrintStream out) {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+            Thread t = new Thread(r, "metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleAtFixedRate(() -> out.println(getReport()), seconds, seconds, TimeUnit.SECONDS);
+        return timer;
+    }
+
+    @Override
+    public long getLookups() {
+        long lookups = 0;
+        for (LongAdder resolution : resolutions) {
+            lookups += resolution.sum();
+        }
+        return lookups;
+    }
+
+    @Override
+    public long getLookupHits() {
+        return getDirectWords();
+    }
+
+    @Override
+    public long getLookupMisses() {
+        return getLookups() - getLookupHits();
+    }
+
+    @Override
+    public long getDirectWords() {
+        return resolutions[Resolution.DIRECT.ordinal()].sum();
+    }
+
+    @Override
+    public long getPluralWords() {
+        return resolutions[Resolution.PLURAL.ordinal()].sum();
+    }
+
+    @Override
+    public long getAffixWords() {
+        return resolutions[Resolution.AFFIX.ordinal()].sum();
+    }
+
+    @Override
+    public long getUnknownWords() {
+        return resolutions[Resolution.UNKNOWN.ordinal()].sum();
+    }
+
+    @Override
+    public long getQueries() {
+        return queryLatency.count();
+    }
+
+    @Override
+    public double getQueryMeanMicros() {
+        return queryLatency.mean() / 1000;
+    }
+
+    @Override
+    public long getQueryP50Micros() {
+        return queryLatency.percentile(50) / 1000;
+    }
+
+    @Override
+    public long getQueryP99Micros() {
+        return queryLatency.percentile(99) / 1000;
+    }
+
+    @Override
+    public long getQueryMaxMicros() {
+        return queryLatency.max() / 1000;
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    @Override
+    public long getLastLoadMillis() {
+        return lastLoad.get();
+    }
+
+    @Override
+    public long getLastUpdateMillis() {
+        return lastUpdate.get();
+    }
+
+    @Override
+    public long getUpdates() {
+        return updates.sum();
+    }
+
+    @Override
+    public int getVocabularySize() {
+        return vocabularySize.getAsInt();
+    }
+
+    @Override
+    public String getReport() {
+        long lookups = getLookups();
+        long cached = getCacheHits() + getCacheMisses();
+        return String.format(Locale.ROOT, "queries=%d mean=%.1fus p50=%dus p99=%dus max=%dus"
+                + " | lookups=%d hits=%.1f%%"
+                + " | words direct=%d plural=%d affix=%d unknown=%d"
+                + " | cached=%d hits=%.1f%%"
+                + " | vocabulary=%d load=%dms updates=%d last=%dms",
+                getQueries(), getQueryMeanMicros(), getQueryP50Micros(), getQueryP99Micros(), getQueryMaxMicros(),
+                lookups, lookups == 0 ? 0.0 : 100.0 * getLookupHits() / lookups,
+                getDirectWords(), getPluralWords(), getAffixWords(), getUnknownWords(),
+                cached, cached == 0 ? 0.0 : 100.0 * getCacheHits() / cached,
+                getVocabularySize(), getLastLoadMillis(), getUpdates(), getLastUpdateMillis());
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder resolution : resolutions) {
+            resolution.reset();
+        }
+        queryLatency.reset();
+        cacheHits.reset();
+        cacheMisses.reset();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 plank.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ymcmp.IDiction;
+
+/**
+ * What {@link Metrics} exposes over JMX. Latencies are in microseconds,
+ * durations in milliseconds; -1 means never measured.
+ *
+ * @author plank
+ */
+public interface MetricsMXBean {
+
+    long getLookups();
+
+    long getLookupHits();
+
+    long getLookupMisses();
+
+    long getDirectWords();
+
+    long getPluralWords();
+
+    long getAffixWords();
+
+    long getUnknownWords();
+
+    long getQueries();
+
+    double getQueryMeanMicros();
+
+    long getQueryP50Micros();
+
+    long getQueryP99Micros();
+
+    long getQueryMaxMicros();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    long getLastLoadMillis();
+
+    long getLastUpdateMillis();
+
+    long getUpdates();
+
+    int getVocabularySize();
+
+    String getReport();
+
+    void reset();
+}
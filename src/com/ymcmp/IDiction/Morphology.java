@@ -0,0 +1,247 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 plank.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ymcmp.IDiction;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.Function;
+
+/**
+ * Resolves inflected words (plurals, "-phobia" compounds...) to a dictionary
+ * stem using suffix rules. The rule suffixes are stored reversed in a trie,
+ * so one walk from the end of a word visits every applicable rule from the
+ * shortest suffix to the longest, that is from the longest stem to the
+ * shortest, and stops at the first stem the dictionary knows.
+ *
+ * Rules are data: see {@code Morphology.properties} for the bundled ones.
+ *
+ * @author plank
+ */
+public class Morphology {
+
+    public static final class Rule {
+
+        private final String suffix;
+        private final String stemEnding;
+        private final String affix;
+
+        /**
+         * @param suffix removed from the word
+         * @param stemEnding appended to what is left to form the stem
+         * @param affix word whose translation follows the stem's, or
+         * {@code null} for a plural
+         */
+        public Rule(String suffix, String stemEnding, String affix) {
+            if (suffix.isEmpty()) {
+                throw new IllegalArgumentException("Rule suffix cannot be empty");
+            }
+            this.suffix = suffix;
+            this.stemEnding = stemEnding;
+            this.affix = affix;
+        }
+
+        public String getSuffix() {
+            return suffix;
+        }
+
+        public String getStemEnding() {
+            return stemEnding;
+        }
+
+        public String getAffix() {
+            return affix;
+        }
+
+        public boolean isPlural() {
+            return affix == null;
+        }
+    }
+
+    public static final class Match {
+
+        private final Rule rule;
+        private final List<String> stem;
+        private final List<String> affix;
+
+        private Match(Rule rule, List<String> stem, List<String> affix) {
+            this.rule = rule;
+            this.stem = stem;
+            this.affix = affix;
+        }
+
+        public Rule getRule() {
+            return rule;
+        }
+
+        /**
+         * @return translations of the stem
+         */
+        public List<String> getStem() {
+            return stem;
+        }
+
+        /**
+         * @return translations of the rule's affix word, {@code null} for a
+         * plural
+         */
+        public List<String> getAffix() {
+            return affix;
+        }
+    }
+
+    private static final class Node {
+
+        private char[] chars = new char[0];
+        private Node[] next = new Node[0];
+        private Rule rule;
+
+        private Node child(char c) {
+            for (int i = 0; i < chars.length; i++) {
+                if (chars[i] == c) {
+                    return next[i];
+                }
+            }
+            return null;
+        }
+
+        private Node addChild(char c) {
+            Node node = child(c);
+            if (node == null) {
+                node = new Node();
+                chars = Arrays.copyOf(chars, chars.length + 1);
+                next = Arrays.copyOf(next, next.length + 1);
+                chars[chars.length - 1] = c;
+                next[next.length - 1] = node;
+            }
+            return node;
+        }
+    }
+
+    private static final String RULES_RES = "Morphology.properties";
+    private static Properties bundledRules;
+
+    private final Node root = new Node();
+    private final Function<String, List<String>> lookup;
+
+    /**
+     * @param rules
+     * @param lookup translations of a word, {@code null} if it is unknown
+     */
+    public Morphology(List<Rule> rules, Function<String, List<String>> lookup) {
+        this.lookup = lookup;
+        rules.forEach((rule) -> {
+            Node node = root;
+            for (int i = rule.suffix.length() - 1; i >= 0; i--) {
+                node = node.addChild(rule.suffix.charAt(i));
+            }
+            node.rule = rule;
+        });
+    }
+
+    /**
+     * @param word a lower case word
+     * @return the rule and stem with the longest stem known to the
+     * dictionary, or {@code null}
+     */
+    public Match analyze(String word) {
+        Node node = root;
+        // Stop before the first character: the stem cannot be empty
+        for (int i = word.length() - 1; i > 0; i--) {
+            node = node.child(word.charAt(i));
+            if (node == null) {
+                break;
+            }
+            Rule rule = node.rule;
+            if (rule == null) {
+                continue;
+            }
+            List<String> stem = lookup.apply(word.substring(0, i).concat(rule.stemEnding));
+            if (stem == null) {
+                continue;
+            }
+            if (rule.isPlural()) {
+                return new Match(rule, stem, null);
+            }
+            List<String> affix = lookup.apply(rule.affix);
+            if (affix != null) {
+                return new Match(rule, stem, affix);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param direction
+     * @return the bundled rules for {@code direction}
+     */
+    public static List<Rule> rules(Translator.Direction direction) {
+        return rules(bundledRules(), direction);
+    }
+
+    /**
+     * Reads rules written as {@code <direction>.<suffix>=<action> [<stem ending>]}
+     * where direction is {@code english} or {@code pjarg} and action is
+     * {@code plural} or {@code +<word>}.
+     *
+     * @param prop
+     * @param direction
+     * @return the rules for {@code direction}
+     */
+    public static List<Rule> rules(Properties prop, Translator.Direction direction) {
+        String prefix = direction == Translator.Direction.ENGLISH_TO_PJARG ? "english." : "pjarg.";
+        List<Rule> rules = new ArrayList<>();
+        prop.stringPropertyNames().stream().filter((name) -> name.startsWith(prefix)).forEach((name) -> {
+            String[] action = prop.getProperty(name).trim().split("\\s+");
+            String stemEnding = action.length > 1 ? action[1] : "";
+            String affix;
+            if (action[0].equals("plural")) {
+                affix = null;
+            } else if (action[0].startsWith("+") && action[0].length() > 1) {
+                affix = action[0].substring(1);
+            } else {
+                throw new IllegalArgumentException("Unknown morphology action `" + action[0] + "' for " + name);
+            }
+            rules.add(new Rule(name.substring(prefix.length()), stemEnding, affix));
+        });
+        return Collections.unmodifiableList(rules);
+    }
+
+    private static synchronized Properties bundledRules() {
+        if (bundledRules == null) {
+            Properties prop = new Properties();
+            try (InputStream in = Morphology.class.getResourceAsStream(RULES_RES)) {
+                prop.load(in);
+            } catch (IOException ex) {
+                throw new RuntimeException("Cannot load " + RULES_RES, ex);
+            }
+            bundledRules = prop;
+        }
+        return bundledRules;
+    }
+}
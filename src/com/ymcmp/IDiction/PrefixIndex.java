@@ -0,0 +1,162 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 plank.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ymcmp.IDiction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * Sorted, duplicate free word list answering case insensitive prefix
+ * queries. The words live in one array ordered by
+ * {@link String#CASE_INSENSITIVE_ORDER}, so all words sharing a prefix form
+ * one contiguous run that two binary searches locate. That gives the same
+ * O(log n + k) completions as a trie without a node per character, and the
+ * array doubles as the sorted view shown in the word list.
+ *
+ * Instances are immutable and can be queried from any thread.
+ *
+ * @author plank
+ */
+public class PrefixIndex {
+
+    private final String[] words;
+
+    public PrefixIndex(Collection<String> words) {
+        String[] sorted = words.toArray(new String[words.size()]);
+        Arrays.sort(sorted, (String o1, String o2) -> {
+            int cmp = String.CASE_INSENSITIVE_ORDER.compare(o1, o2);
+            return cmp != 0 ? cmp : o1.compareTo(o2);
+        });
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (n == 0 || !sorted[i].equals(sorted[n - 1])) {
+                sorted[n++] = sorted[i];
+            }
+        }
+        this.words = n == sorted.length ? sorted : Arrays.copyOf(sorted, n);
+    }
+
+    public int size() {
+        return words.length;
+    }
+
+    public String get(int i) {
+        return words[i];
+    }
+
+    /**
+     * @param width measures a word, for example in pixels
+     * @return the widest word, or an empty string if there are no words
+     */
+    public String widest(ToIntFunction<String> width) {
+        String max = "";
+        int maxWidth = width.applyAsInt(max);
+        for (String word : words) {
+            int w = width.applyAsInt(word);
+            if (w > maxWidth) {
+                max = word;
+                maxWidth = w;
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return all words in order
+     */
+    public List<String> words() {
+        return Collections.unmodifiableList(Arrays.asList(words));
+    }
+
+    /**
+     * @param prefix
+     * @return index of the first word starting with {@code prefix}, ignoring
+     * case
+     */
+    public int from(String prefix) {
+        int low = 0;
+        int high = words.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparePrefix(words[mid], prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param prefix
+     * @return index after the last word starting with {@code prefix},
+     * ignoring case
+     */
+    public int to(String prefix) {
+        int low = 0;
+        int high = words.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparePrefix(words[mid], prefix) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param prefix
+     * @param limit
+     * @return at most {@code limit} words starting with {@code prefix}, in
+     * order
+     */
+    public List<String> complete(String prefix, int limit) {
+        int from = from(prefix);
+        int to = Math.min(to(prefix), from + limit);
+        return from >= to ? Collections.emptyList() : new ArrayList<>(Arrays.asList(words).subList(from, to));
+    }
+
+    // Compares the first prefix.length() characters of word with prefix, the way CASE_INSENSITIVE_ORDER does
+    private static int comparePrefix(String word, String prefix) {
+        int n = Math.min(word.length(), prefix.length());
+        for (int i = 0; i < n; i++) {
+            char c1 = word.charAt(i);
+            char c2 = prefix.charAt(i);
+            if (c1 != c2) {
+                c1 = Character.toLowerCase(Character.toUpperCase(c1));
+                c2 = Character.toLowerCase(Character.toUpperCase(c2));
+                if (c1 != c2) {
+                    return c1 - c2;
+                }
+            }
+        }
+        return word.length() < prefix.length() ? -1 : 0;
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 plank.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ymcmp.IDiction;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Reads {@code .properties} files without going through
+ * {@link java.util.Properties}. The grammar is the one of
+ * {@link java.util.Properties#load(InputStream)}: ISO 8859-1 text, comment
+ * lines starting with {@code #} or {@code !}, keys ending at an unescaped
+ * {@code =}, {@code :} or space, backslash line continuations and
+ * {@code \t \n \r \f \\uXXXX} escapes. Entries are parsed straight out of a
+ * byte buffer and handed to the caller as they are found, so no
+ * synchronized table is filled and copied on the way.
+ *
+ * Parsing keeps no state between calls; any number of buffers can be
+ * parsed at once from different threads.
+ *
+ * @author plank
+ */
+public final class PropertiesParser {
+
+    private PropertiesParser() {
+    }
+
+    /**
+     * Maps {@code file:} URLs and reads any other kind fully.
+     *
+     * @param url
+     * @return the bytes behind {@code url}
+     * @throws IOException
+     */
+    public static ByteBuffer read(URL url) throws IOException {
+        if ("file".equals(url.getProtocol())) {
+            try (FileChannel ch = FileChannel.open(Paths.get(url.toURI()), StandardOpenOption.READ)) {
+                return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            } catch (URISyntaxException | IllegalArgumentException ex) {
+                // Not a plain path after all; the stream below still works
+            }
+        }
+        try (InputStream in = url.openStream()) {
+            return ByteBuffer.wrap(readFully(in));
+        }
+    }
+
+    /**
+     * Parses every entry, in file order, keeping the last value of a key
+     * given more than once as {@link java.util.Properties} does.
+     *
+     * @param in
+     * @return the entries, each key once
+     */
+    public static List<Map.Entry<String, String>> entries(ByteBuffer in) {
+        Collector collector = new Collector();
+        parse(in, collector);
+        return collector.entries;
+    }
+
+    // Open addressing over entry indexes, so deduplicating costs no node or box per entry
+    private static final class Collector implements BiConsumer<String, String> {
+
+        private final List<Map.Entry<String, String>> entries = new ArrayList<>();
+        // index + 1 of the entry whose key hashes here, 0 if free; at most half full
+        private int[] slots = new int[64];
+
+        @Override
+        public void accept(String key, String value) {
+            Map.Entry<String, String> entry = new SimpleImmutableEntry<>(key, value);
+            int mask = slots.length - 1;
+            for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+                int at = slots[i] - 1;
+                if (at < 0) {
+                    entries.add(entry);
+                    slots[i] = entries.size();
+                    if (entries.size() * 2 > slots.length) {
+                        grow();
+                    }
+                    return;
+                }
+                if (entries.get(at).getKey().equals(key)) {
+                    entries.set(at, entry);
+                    return;
+                }
+            }
+        }
+
+        private void grow() {
+            int[] old = slots;
+            slots = new int[old.length * 2];
+            int mask = slots.length - 1;
+            for (int taken : old) {
+                if (taken != 0) {
+                    int i = hash(entries.get(taken - 1).getKey()) & mask;
+                    while (slots[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    slots[i] = taken;
+                }
+            }
+        }
+
+        private static int hash(String key) {
+            int h = key.hashCode();
+            return h ^ (h >>> 16);
+        }
+    }
+
+    /**
+     * Passes every entry of {@code in} to {@code sink} in file order,
+     * repeated keys included. The buffer's position is left unchanged.
+     *
+     * @param in
+     * @param sink
+     * @throws IllegalArgumentException on a malformed {@code \\uXXXX} escape
+     */
+    public static void parse(ByteBuffer in, BiConsumer<String, String> sink) {
+        int pos = in.position();
+        int limit = in.limit();
+        char[] line = new char[256];
+        // One logical line at a time, as Properties.LineReader gathers them
+        int len = 0;
+        boolean skipWhiteSpace = true;
+        boolean appendedLineBegin = false;
+        boolean precedingBackslash = false;
+        while (true) {
+            if (pos >= limit) {
+                if (len > 0) {
+                    emit(line, precedingBackslash ? len - 1 : len, sink);
+                }
+                return;
+            }
+            char c = (char) (in.get(pos++) & 0xFF);
+            if (skipWhiteSpace) {
+                if (c == ' ' || c == '\t' || c == '\f') {
+                    continue;
+                }
+                if (!appendedLineBegin && (c == '\r' || c == '\n')) {
+                    continue;
+                }
+                skipWhiteSpace = false;
+                appendedLineBegin = false;
+            }
+            if (len == 0 && (c == '#' || c == '!')) {
+                while (pos < limit && (c = (char) (in.get(pos++) & 0xFF)) != '\r' && c != '\n') {
+                    // comment
+                }
+                if (c != '\r' && c != '\n') {
+                    return;
+                }
+                skipWhiteSpace = true;
+                continue;
+            }
+            if (c != '\n' && c != '\r') {
+                if (len == line.length) {
+                    line = Arrays.copyOf(line, len * 2);
+                }
+                line[len++] = c;
+                precedingBackslash = c == '\\' && !precedingBackslash;
+                continue;
+            }
+            if (len == 0) {
+                skipWhiteSpace = true;
+                continue;
+            }
+            if (pos >= limit) {
+                emit(line, precedingBackslash ? len - 1 : len, sink);
+                return;
+            }
+            if (precedingBackslash) {
+                // Continued: drop the backslash and the next line's indent
+                len--;
+                skipWhiteSpace = true;
+                appendedLineBegin = true;
+                precedingBackslash = false;
+                if (c == '\r' && in.get(pos) == '\n') {
+                    pos++;
+                }
+                continue;
+            }
+            emit(line, len, sink);
+            len = 0;
+            skipWhiteSpace = true;
+            appendedLineBegin = false;
+        }
+    }
+
+    // Splits a logical line into key and value, as Properties.load0 does
+    private static void emit(char[] line, int len, BiConsumer<String, String> sink) {
+        int keyLen = 0;
+        int valueStart = len;
+        boolean hasSep = false;
+        boolean precedingBackslash = false;
+        while (keyLen < len) {
+            char c = line[keyLen];
+            if ((c == '=' || c == ':') && !precedingBackslash) {
+                valueStart = keyLen + 1;
+                hasSep = true;
+                break;
+            } else if ((c == ' ' || c == '\t' || c == '\f') && !precedingBackslash) {
+                valueStart = keyLen + 1;
+                break;
+            }
+            precedingBackslash = c == '\\' && !precedingBackslash;
+            keyLen++;
+        }
+        while (valueStart < len) {
+            char c = line[valueStart];
+            if (c != ' ' && c != '\t' && c != '\f') {
+                if (!hasSep && (c == '=' || c == ':')) {
+                    hasSep = true;
+                } else {
+                    break;
+                }
+            }
+            valueStart++;
+        }
+        sink.accept(unescape(line, 0, keyLen), unescape(line, valueStart, len));
+    }
+
+    private static String unescape(char[] s, int from, int to) {
+        int i = from;
+        while (i < to && s[i] != '\\') {
+            i++;
+        }
+        if (i == to) {
+            return new String(s, from, to - from);
+        }
+        StringBuilder sb = new StringBuilder(to - from).append(s, from, i - from);
+        while (i < to) {
+            char c = s[i++];
+            if (c != '\\' || i == to) {
+                sb.append(c);
+                continue;
+            }
+            c = s[i++];
+            switch (c) {
+            case 'u':
+                if (to - i < 4) {
+                    throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+                }
+                int code = 0;
+                for (int end = i + 4; i < end; i++) {
+                    int digit = Character.digit(s[i], 16);
+                    if (digit < 0) {
+                        throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+                    }
+                    code = (code << 4) | digit;
+                }
+                sb.append((char) code);
+                break;
+            case 't':
+                sb.append('\t');
+                break;
+            case 'r':
+                sb.append('\r');
+                break;
+            case 'n':
+                sb.append('\n');
+                break;
+            case 'f':
+                sb.append('\f');
+                break;
+            default:
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int read;
+        while ((read = in.read(buf)) != -1) {
+            out.write(buf, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
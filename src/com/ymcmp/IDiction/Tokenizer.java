@@ -0,0 +1,237 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 plank.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ymcmp.IDiction;
+
+/**
+ * Splits a sentence into whitespace separated tokens and classifies each one
+ * in a single scan, without allocating. A token is a word or a number,
+ * optionally followed by trailing punctuation, or punctuation on its own.
+ *
+ * The rules mirror the regular expressions the translator used to run on
+ * every token: {@code \s} separates tokens, {@code \W+$} is the trailing
+ * punctuation, {@code \d+(\.\d+)?} is a number and {@code [A-Z].*} is a
+ * capitalized word.
+ *
+ * @author plank
+ */
+class Tokenizer {
+
+    public enum Kind {
+        WORD, NUMBER, PUNCTUATION
+    }
+
+    // Number recognizer states
+    private static final int N_START = 0;
+    private static final int N_INT = 1;
+    private static final int N_DOT = 2;
+    private static final int N_FRACTION = 3;
+    private static final int N_NONE = 4;
+
+    private final CharSequence text;
+    private final int limit;
+    private int pos;
+
+    private int start;
+    private int end;
+    private int wordEnd;
+    private Kind kind;
+    private boolean blank;
+    private boolean capitalized;
+
+    public Tokenizer(CharSequence text) {
+        // Same bounds as String.trim()
+        int low = 0;
+        int high = text.length();
+        while (low < high && text.charAt(low) <= ' ') {
+            low++;
+        }
+        while (high > low && text.charAt(high - 1) <= ' ') {
+            high--;
+        }
+        this.text = text;
+        this.pos = low;
+        this.limit = high;
+    }
+
+    /**
+     * Advances to the next token.
+     *
+     * @return false when there are no more tokens
+     */
+    public boolean next() {
+        while (pos < limit && isSpace(text.charAt(pos))) {
+            pos++;
+        }
+        if (pos >= limit) {
+            return false;
+        }
+        start = pos;
+        blank = true;
+        wordEnd = start;
+        int terminator = -1;
+        int number = N_START;
+        int numberAtWordEnd = N_NONE;
+        for (; pos < limit; pos++) {
+            char c = text.charAt(pos);
+            if (isSpace(c)) {
+                break;
+            }
+            if (c > ' ') {
+                blank = false;
+            }
+            if (terminator < 0 && isLineTerminator(c)) {
+                terminator = pos;
+            }
+            number = nextNumberState(number, c);
+            if (isWordChar(c)) {
+                wordEnd = pos + 1;
+                numberAtWordEnd = number;
+            }
+        }
+        end = pos;
+
+        if (wordEnd == start) {
+            kind = Kind.PUNCTUATION;
+            capitalized = false;
+            return true;
+        }
+        if (terminator >= 0 && terminator < wordEnd) {
+            // The punctuation rule does not apply across a line terminator
+            wordEnd = end;
+            kind = Kind.WORD;
+        } else {
+            kind = numberAtWordEnd == N_INT || numberAtWordEnd == N_FRACTION ? Kind.NUMBER : Kind.WORD;
+        }
+        capitalized = isCapitalized(text, start, wordEnd);
+        return true;
+    }
+
+    /**
+     * @return start of the current token
+     */
+    public int start() {
+        return start;
+    }
+
+    /**
+     * @return end of the current token, including trailing punctuation
+     */
+    public int end() {
+        return end;
+    }
+
+    /**
+     * @return end of the word or number, where trailing punctuation starts
+     */
+    public int wordEnd() {
+        return wordEnd;
+    }
+
+    public Kind kind() {
+        return kind;
+    }
+
+    /**
+     * @return true if the token is only made of control characters
+     */
+    public boolean isBlank() {
+        return blank;
+    }
+
+    /**
+     * @return true if the word starts with an upper case ASCII letter
+     */
+    public boolean isCapitalized() {
+        return capitalized;
+    }
+
+    /**
+     * @param s
+     * @return true if the whole token equals {@code s}
+     */
+    public boolean is(String s) {
+        if (end - start != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (text.charAt(start + i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static boolean isCapitalized(CharSequence s) {
+        return isCapitalized(s, 0, s.length());
+    }
+
+    private static boolean isCapitalized(CharSequence s, int from, int to) {
+        if (from >= to) {
+            return false;
+        }
+        char first = s.charAt(from);
+        if (first < 'A' || first > 'Z') {
+            return false;
+        }
+        for (int i = from + 1; i < to; i++) {
+            if (isLineTerminator(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int nextNumberState(int state, char c) {
+        boolean digit = c >= '0' && c <= '9';
+        switch (state) {
+        case N_START:
+            if (c <= ' ') {
+                return N_START; // String.trim()
+            }
+            return digit ? N_INT : N_NONE;
+        case N_INT:
+            if (digit) {
+                return N_INT;
+            }
+            return c == '.' ? N_DOT : N_NONE;
+        case N_DOT:
+        case N_FRACTION:
+            return digit ? N_FRACTION : N_NONE;
+        default:
+            return N_NONE;
+        }
+    }
+
+    public static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    public static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    public static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
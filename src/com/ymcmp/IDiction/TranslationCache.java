@@ -0,0 +1,162 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 plank.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ymcmp.IDiction;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded least recently used cache of translated queries. Entries are
+ * weighed by their characters, so a few long sentences cannot push out
+ * hundreds of single words, and the cache as a whole stays under a fixed
+ * size.
+ *
+ * Queries are keyed with runs of the spaces that separate tokens
+ * collapsed, which the translator skips anyway. The cache belongs to one
+ * {@link Translator} at a time: asking with a different one, as happens
+ * after the dictionary is updated or the direction toggled, empties it
+ * first, so a stale translation is never returned.
+ *
+ * Hits and misses are counted in {@link Metrics#GLOBAL}. Thread-safe;
+ * misses are translated under the lock.
+ *
+ * @author plank
+ */
+public class TranslationCache {
+
+    private final long maxWeight;
+    // Access order: iteration starts at the least recently used entry
+    private final LinkedHashMap<String, String> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final StringBuilder buffer = new StringBuilder(1024);
+    private Translator owner;
+    private long weight;
+    private long evictions;
+
+    /**
+     * @param maxWeight the most characters of queries and translations kept
+     */
+    public TranslationCache(long maxWeight) {
+        if (maxWeight < 1) {
+            throw new IllegalArgumentException("Need room for at least one character: " + maxWeight);
+        }
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * @param translator
+     * @param query
+     * @return what {@code translator.translate(query)} returns
+     */
+    public synchronized String translate(Translator translator, String query) {
+        if (translator != owner) {
+            invalidate();
+            owner = translator;
+        }
+        String key = normalize(query);
+        String cached = entries.get(key);
+        Metrics.GLOBAL.cached(cached != null);
+        if (cached != null) {
+            return cached;
+        }
+        buffer.setLength(0);
+        translator.translate(key, buffer);
+        String translated = buffer.toString();
+        long w = weigh(key, translated);
+        // Too big to keep without evicting everything else
+        if (w <= maxWeight) {
+            entries.put(key, translated);
+            weight += w;
+            evict();
+        }
+        return translated;
+    }
+
+    /**
+     * Forgets every translation.
+     */
+    public synchronized void invalidate() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return characters held, at most the maximum weight
+     */
+    public synchronized long weight() {
+        return weight;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, String>> it = entries.entrySet().iterator();
+        while (weight > maxWeight) {
+            Map.Entry<String, String> eldest = it.next();
+            weight -= weigh(eldest.getKey(), eldest.getValue());
+            it.remove();
+            ++evictions;
+        }
+    }
+
+    private static long weigh(String query, String translation) {
+        return query.length() + translation.length();
+    }
+
+    // Trims and turns every run of token separators into one space; returns query if already so
+    static String normalize(String query) {
+        int n = query.length();
+        boolean clean = n == 0 || !Tokenizer.isSpace(query.charAt(0)) && !Tokenizer.isSpace(query.charAt(n - 1));
+        for (int i = 0; clean && i < n; i++) {
+            char c = query.charAt(i);
+            if (Tokenizer.isSpace(c) && (c != ' ' || Tokenizer.isSpace(query.charAt(i + 1)))) {
+                clean = false;
+            }
+        }
+        if (clean) {
+            return query;
+        }
+        StringBuilder sb = new StringBuilder(n);
+        boolean space = false;
+        for (int i = 0; i < n; i++) {
+            char c = query.charAt(i);
+            if (Tokenizer.isSpace(c)) {
+                space = sb.length() > 0;
+            } else {
+                if (space) {
+                    sb.append(' ');
+                    space = false;
+                }
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,438 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 plank.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ymcmp.IDiction;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serves a {@link Dictionary} over HTTP with JSON responses, using the
+ * server built into the JDK. Connections are kept alive between requests.
+ *
+ * <pre>
+ * GET  /lookup?word=W                     Pjarg translations of an English word
+ * GET  /reverse?word=W                    English translations of a Pjarg word
+ *                                         (both say which source file each came from)
+ * GET  /complete?prefix=P[&amp;limit=N][&amp;from=pjarg]  words starting with P
+ * GET  /translate?q=TEXT[&amp;from=pjarg]     translates one sentence
+ * POST /translate[?from=pjarg]            translates every line of the UTF-8 body
+ * </pre>
+ *
+ * Requests are accepted on the server's dispatcher thread and handled on a
+ * fixed pool of workers. At most {@code threads + queued} requests are in
+ * flight; past that a request is answered at once with 503 and a
+ * {@code Retry-After} header rather than queued, so a burst cannot build up
+ * an unbounded backlog or stall the requests already admitted.
+ *
+ * The dictionary must not be written to while the server runs, unless it
+ * is a {@link ConcurrentDictionary}.
+ *
+ * @author plank
+ */
+public class TranslationServer {
+
+    // Largest POST body accepted by /translate
+    private static final int MAX_BODY = 1 << 20;
+    private static final int DEFAULT_LIMIT = 20;
+    private static final int MAX_LIMIT = 1000;
+    private static final String NODELAY_PROP = "sun.net.httpserver.nodelay";
+
+    private final Dictionary<String, String> dictionary;
+    private final Translator toPjarg;
+    private final Translator toEnglish;
+    private final PrefixIndex englishIndex;
+    private final PrefixIndex pjargIndex;
+    private final int threads;
+    private final Semaphore admitted;
+    private final LongAdder shed = new LongAdder();
+    private ThreadPoolExecutor workers;
+    private HttpServer server;
+
+    /**
+     * @param dict
+     * @param threads worker threads handling requests
+     * @param queued requests allowed to wait for a worker before new ones
+     * are turned away
+     */
+    public TranslationServer(Dictionary<String, String> dict, int threads, int queued) {
+        if (threads < 1 || queued < 0) {
+            throw new IllegalArgumentException("Need at least one thread and a non-negative queue: " + threads + ", " + queued);
+        }
+        this.dictionary = dict;
+        this.toPjarg = new Translator(dict, Translator.Direction.ENGLISH_TO_PJARG);
+        this.toEnglish = new Translator(dict, Translator.Direction.PJARG_TO_ENGLISH);
+        this.englishIndex = new PrefixIndex(dict.getKeys());
+        this.pjargIndex = new PrefixIndex(dict.getValues());
+        this.threads = threads;
+        this.admitted = new Semaphore(threads + queued);
+    }
+
+    /**
+     * @param address where to listen; port 0 picks a free one
+     * @return the address actually listened on
+     * @throws IOException if the address cannot be bound
+     */
+    public synchronized InetSocketAddress start(InetSocketAddress address) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("Already started");
+        }
+        AtomicInteger count = new AtomicInteger();
+        // Admission is bounded by the semaphore, so the queue never grows past it
+        workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), (r) -> {
+            Thread t = new Thread(r, "translation-server-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        workers.prestartAllCoreThreads();
+        // Headers and body go out in separate writes; with Nagle's algorithm the
+        // body then waits for the client's delayed ACK, adding ~40ms to every
+        // request. Read once by the JDK when the first server is created.
+        if (System.getProperty(NODELAY_PROP) == null) {
+            System.setProperty(NODELAY_PROP, "true");
+        }
+        server = HttpServer.create(address, 0);
+        // No executor: handlers run on the dispatcher thread, which only admits or sheds
+        server.createContext("/lookup", (exchange) -> dispatch(exchange, this::lookup));
+        server.createContext("/reverse", (exchange) -> dispatch(exchange, this::reverse));
+        server.createContext("/complete", (exchange) -> dispatch(exchange, this::complete));
+        server.createContext("/translate", (exchange) -> dispatch(exchange, this::translate));
+        server.createContext("/", (exchange) -> {
+            try {
+                respond(exchange, 404, error("Unknown path " + exchange.getRequestURI().getPath()));
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+        return server.getAddress();
+    }
+
+    /**
+     * Stops accepting connections and waits up to {@code delaySeconds} for
+     * the requests being handled.
+     *
+     * @param delaySeconds
+     */
+    public synchronized void stop(int delaySeconds) {
+        if (server == null) {
+            return;
+        }
+        server.stop(delaySeconds);
+        workers.shutdown();
+        server = null;
+        workers = null;
+    }
+
+    /**
+     * @return requests answered with 503 because too many were in flight
+     */
+    public long getShed() {
+        return shed.sum();
+    }
+
+    private interface Endpoint {
+
+        void handle(HttpExchange exchange, Map<String, String> params) throws IOException;
+    }
+
+    private void dispatch(HttpExchange exchange, Endpoint endpoint) throws IOException {
+        if (!admitted.tryAcquire()) {
+            shed.increment();
+            try {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                respond(exchange, 503, error("Too many requests in flight"));
+            } finally {
+                exchange.close();
+            }
+            return;
+        }
+        workers.execute(() -> {
+            try {
+                endpoint.handle(exchange, params(exchange.getRequestURI().getRawQuery()));
+            } catch (IllegalArgumentException ex) {
+                tryRespond(exchange, 400, error(ex.getMessage()));
+            } catch (IOException ex) {
+                // The client went away; nothing left to tell it
+            } catch (RuntimeException ex) {
+                tryRespond(exchange, 500, error(String.valueOf(ex)));
+            } finally {
+                admitted.release();
+                exchange.close();
+            }
+        });
+    }
+
+    private void lookup(HttpExchange exchange, Map<String, String> params) throws IOException {
+        if (allow(exchange, "GET")) {
+            String word = required(params, "word");
+            String key = word.toLowerCase();
+            StringBuilder json = words(word, dictionary.getValues(key));
+            if (dictionary instanceof LayeredDictionary) {
+                sources(((LayeredDictionary<String, String>) dictionary).getValuesBySource(key), json);
+            }
+            respond(exchange, 200, json.append('}'));
+        }
+    }
+
+    private void reverse(HttpExchange exchange, Map<String, String> params) throws IOException {
+        if (allow(exchange, "GET")) {
+            String word = required(params, "word");
+            // Pjarg words are stored capitalized, as the translator looks them up
+            String value = Translator.stmtCase(word.toLowerCase());
+            StringBuilder json = words(word, dictionary.getKeys(value));
+            if (dictionary instanceof LayeredDictionary) {
+                sources(((LayeredDictionary<String, String>) dictionary).getKeysBySource(value), json);
+            }
+            respond(exchange, 200, json.append('}'));
+        }
+    }
+
+    private void complete(HttpExchange exchange, Map<String, String> params) throws IOException {
+        if (!allow(exchange, "GET")) {
+            return;
+        }
+        String prefix = required(params, "prefix");
+        int limit = DEFAULT_LIMIT;
+        if (params.containsKey("limit")) {
+            try {
+                limit = Integer.parseInt(params.get("limit"));
+            } catch (NumberFormatException ex) {
+                limit = -1;
+            }
+            if (limit < 0 || limit > MAX_LIMIT) {
+                throw new IllegalArgumentException("limit must be 0.." + MAX_LIMIT);
+            }
+        }
+        PrefixIndex index = fromPjarg(params) ? pjargIndex : englishIndex;
+        StringBuilder json = new StringBuilder("{\"prefix\":");
+        quote(prefix, json).append(",\"completions\":");
+        array(index.complete(prefix, limit), json).append('}');
+        respond(exchange, 200, json);
+    }
+
+    private void translate(HttpExchange exchange, Map<String, String> params) throws IOException {
+        if (!allow(exchange, "GET", "POST")) {
+            return;
+        }
+        Translator translator = fromPjarg(params) ? toEnglish : toPjarg;
+        StringBuilder json = new StringBuilder("{\"translations\":[");
+        StringBuilder line = new StringBuilder();
+        if (exchange.getRequestMethod().equals("GET")) {
+            translateLine(translator, required(params, "q"), line, json);
+        } else {
+            String body = readBody(exchange);
+            if (body == null) {
+                respond(exchange, 413, error("Body is over " + MAX_BODY + " bytes"));
+                return;
+            }
+            int start = 0;
+            while (start < body.length()) {
+                int end = body.indexOf('\n', start);
+                if (end < 0) {
+                    end = body.length();
+                }
+                if (start > 0) {
+                    json.append(',');
+                }
+                int stop = end > start && body.charAt(end - 1) == '\r' ? end - 1 : end;
+                translateLine(translator, body.substring(start, stop), line, json);
+                start = end + 1;
+            }
+        }
+        json.append("]}");
+        respond(exchange, 200, json);
+    }
+
+    private static void translateLine(Translator translator, String text, StringBuilder line, StringBuilder json) {
+        line.setLength(0);
+        translator.translate(text, line);
+        int end = line.length();
+        if (end > 0 && line.charAt(end - 1) == ' ') {
+            line.setLength(end - 1);
+        }
+        quote(line, json);
+    }
+
+    private static boolean fromPjarg(Map<String, String> params) {
+        String from = params.getOrDefault("from", "english");
+        switch (from) {
+        case "english":
+            return false;
+        case "pjarg":
+            return true;
+        default:
+            throw new IllegalArgumentException("from must be english or pjarg: " + from);
+        }
+    }
+
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing parameter " + name);
+        }
+        return value;
+    }
+
+    private static boolean allow(HttpExchange exchange, String... methods) throws IOException {
+        for (String method : methods) {
+            if (method.equals(exchange.getRequestMethod())) {
+                return true;
+            }
+        }
+        exchange.getResponseHeaders().set("Allow", String.join(", ", methods));
+        respond(exchange, 405, error("Method " + exchange.getRequestMethod() + " not allowed"));
+        return false;
+    }
+
+    private static Map<String, String> params(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        try {
+            for (String pair : query.split("&")) {
+                int eq = pair.indexOf('=');
+                String name = eq < 0 ? pair : pair.substring(0, eq);
+                String value = eq < 0 ? "" : pair.substring(eq + 1);
+                params.putIfAbsent(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+            }
+        } catch (UnsupportedEncodingException ex) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(ex);
+        }
+        return params;
+    }
+
+    // The body as UTF-8, or null if it is longer than MAX_BODY
+    private static String readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        try (InputStream in = exchange.getRequestBody()) {
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                if (body.size() + n > MAX_BODY) {
+                    return null;
+                }
+                body.write(buf, 0, n);
+            }
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    // Left open for more fields
+    private static StringBuilder words(String word, List<String> translations) {
+        StringBuilder json = new StringBuilder("{\"word\":");
+        quote(word, json).append(",\"translations\":");
+        return array(translations, json);
+    }
+
+    // Which source file gave which translations
+    private static void sources(List<Map.Entry<String, List<String>>> bySource, StringBuilder json) {
+        json.append(",\"sources\":[");
+        for (int i = 0; i < bySource.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"source\":");
+            quote(bySource.get(i).getKey(), json).append(",\"translations\":");
+            array(bySource.get(i).getValue(), json).append('}');
+        }
+        json.append(']');
+    }
+
+    private static StringBuilder error(String message) {
+        return quote(message, new StringBuilder("{\"error\":")).append('}');
+    }
+
+    private static StringBuilder array(List<String> items, StringBuilder json) {
+        json.append('[');
+        if (items != null) {
+            for (int i = 0; i < items.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                quote(items.get(i), json);
+            }
+        }
+        return json.append(']');
+    }
+
+    private static StringBuilder quote(CharSequence s, StringBuilder json) {
+        json.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '"':
+                json.append("\\\"");
+                break;
+            case '\\':
+                json.append("\\\\");
+                break;
+            default:
+                if (c < 0x20) {
+                    json.append(String.format("\\u%04x", (int) c));
+                } else {
+                    json.append(c);
+                }
+            }
+        }
+        return json.append('"');
+    }
+
+    private static void respond(HttpExchange exchange, int status, CharSequence json) throws IOException {
+        byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        // A fixed length lets the connection be reused for the next request
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    // For errors found after the response may already have been started
+    private static void tryRespond(HttpExchange exchange, int status, CharSequence json) {
+        try {
+            respond(exchange, status, json);
+        } catch (IOException | RuntimeException ex) {
+            // Headers already sent or the client went away
+        }
+    }
+}
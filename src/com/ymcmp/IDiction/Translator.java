@@ -0,0 +1,338 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 plank.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ymcmp.IDiction;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Translates sentences between English and Pjarg with a {@link Dictionary}
+ * whose keys are English and values are Pjarg.
+ *
+ * A translator holds no mutable state, so one instance can be shared by any
+ * number of threads as long as nobody modifies the dictionary meanwhile.
+ *
+ * @author plank
+ */
+public class Translator {
+
+    public enum Direction {
+        ENGLISH_TO_PJARG, PJARG_TO_ENGLISH
+    }
+
+    private static final String K_APOSTROPHE_S = "-belong";
+    private static final int MAX_SUGGESTIONS = 3;
+
+    private final Dictionary<String, String> dictionary;
+    private final boolean displayEnglish;
+    private final List<Morphology.Rule> rules;
+    private final Morphology morphology;
+    private final FuzzyIndex suggestions;
+
+    public Translator(Dictionary<String, String> dictionary, Direction direction) {
+        this(dictionary, direction, Morphology.rules(direction));
+    }
+
+    /**
+     * @param dictionary
+     * @param direction
+     * @param rules suffix rules tried on words missing from the dictionary
+     */
+    public Translator(Dictionary<String, String> dictionary, Direction direction, List<Morphology.Rule> rules) {
+        this(dictionary, direction, rules, null);
+    }
+
+    /**
+     * @param dictionary
+     * @param direction
+     * @param rules suffix rules tried on words missing from the dictionary
+     * @param suggestions words offered next to unknown words, may be
+     * {@code null}
+     */
+    public Translator(Dictionary<String, String> dictionary, Direction direction, List<Morphology.Rule> rules, FuzzyIndex suggestions) {
+        this.dictionary = dictionary;
+        this.displayEnglish = direction == Direction.ENGLISH_TO_PJARG;
+        this.rules = rules;
+        this.morphology = new Morphology(rules, this::getVocab);
+        this.suggestions = suggestions;
+    }
+
+    /**
+     * @param suggestions source words (English or Pjarg, following the
+     * direction) offered for unknown words
+     * @return a copy of this translator that suggests close matches
+     */
+    public Translator withSuggestions(FuzzyIndex suggestions) {
+        return new Translator(dictionary, getDirection(), rules, suggestions);
+    }
+
+    public Direction getDirection() {
+        return displayEnglish ? Direction.ENGLISH_TO_PJARG : Direction.PJARG_TO_ENGLISH;
+    }
+
+    /**
+     * Translates one sentence. Words that are not in the dictionary are
+     * quoted as {@code `word'}.
+     *
+     * @param s
+     * @return the translated text, every token followed by a space
+     */
+    public String translate(String s) {
+        StringBuilder sb = new StringBuilder();
+        translate(s, sb);
+        return sb.toString();
+    }
+
+    /**
+     * Translates {@code in} line by line, writing each translated line to
+     * {@code out} as soon as it is done. Neither stream is closed.
+     *
+     * @param in
+     * @param out
+     * @throws IOException
+     */
+    public void translate(Reader in, Writer out) throws IOException {
+        BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+        StringBuilder sb = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            writeLine(line, sb, out);
+        }
+        out.flush();
+    }
+
+    /**
+     * Translates every line of {@code lines} into {@code out}, one output
+     * line per input line. {@code out} is not closed.
+     *
+     * @param lines
+     * @param out
+     * @throws IOException
+     */
+    public void translate(Stream<String> lines, Writer out) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        Iterator<String> it = lines.iterator();
+        while (it.hasNext()) {
+            writeLine(it.next(), sb, out);
+        }
+        out.flush();
+    }
+
+    private void writeLine(String line, StringBuilder sb, Writer out) throws IOException {
+        sb.setLength(0);
+        appendLine(line, sb);
+        out.append(sb);
+    }
+
+    // Appends the translated line without the trailing space, then a line separator
+    void appendLine(String line, StringBuilder sb) {
+        int start = sb.length();
+        translate(line, sb);
+        int end = sb.length();
+        if (end > start && sb.charAt(end - 1) == ' ') {
+            sb.setLength(end - 1);
+        }
+        sb.append(System.lineSeparator());
+    }
+
+    /**
+     * Appends the translation of one sentence to {@code sb} instead of
+     * returning a new string, so the caller can reuse one buffer across
+     * queries.
+     *
+     * @param s
+     * @param sb
+     */
+    public void translate(String s, StringBuilder sb) {
+        long started = System.nanoTime();
+        // Counted locally and published once per query to keep the loop cheap
+        int direct = 0;
+        int plural = 0;
+        int affix = 0;
+        int unknown = 0;
+        // Parse: Hello people. -> ["Hello", "people."]
+        Tokenizer tok = new Tokenizer(s);
+        boolean nextwordCaps = false;
+        while (tok.next()) {
+            if (tok.isBlank() || tok.is("the")) {
+                continue; // the does not exist
+            }
+            if (tok.is("The")) {
+                nextwordCaps = true;
+                continue;
+            }
+            switch (tok.kind()) {
+            case PUNCTUATION:
+                sb.append(s, tok.start(), tok.end());
+                continue;
+            case NUMBER:
+                sb.append(s, tok.start(), tok.wordEnd());
+                break;
+            default:
+                String txt = s.substring(tok.start(), tok.wordEnd());
+                boolean caps = tok.isCapitalized();
+                if (nextwordCaps) {
+                    txt = stmtCase(txt);
+                    caps = Tokenizer.isCapitalized(txt);
+                    nextwordCaps = false;
+                }
+                Metrics.Resolution how;
+                if (displayEnglish && (txt.endsWith("'s") || txt.endsWith("s'"))) {
+                    sb.append(txt, 0, txt.length() - 2).append(" ");
+                    how = appendText(K_APOSTROPHE_S, false, sb);
+                } else {
+                    how = appendText(txt, caps, sb);
+                }
+                switch (how) {
+                case DIRECT:
+                    direct++;
+                    break;
+                case PLURAL:
+                    plural++;
+                    break;
+                case AFFIX:
+                    affix++;
+                    break;
+                default:
+                    unknown++;
+                }
+            }
+            // Parse: help?
+            sb.append(s, tok.wordEnd(), tok.end()).append(" ");
+        }
+        Metrics.GLOBAL.query(System.nanoTime() - started, direct, plural, affix, unknown);
+    }
+
+    private String appendPjargPlural(char last) {
+        String msg = "";
+        switch (last) {
+        case 's':
+        case 'v':
+        case 'g':
+            msg += "e";
+        default:
+            msg += "s";
+        }
+        return msg;
+    }
+
+    private String appendEngPlural(String last) {
+        if (last.equals("us")) {
+            return "i";
+        }
+        if (last.equals("s") | last.equals("x")) {
+            return "es";
+        }
+        return "s";
+    }
+
+    private List<String> getVocab(String txt) {
+        return displayEnglish ? dictionary.getValues(txt) : dictionary.getKeys(stmtCase(txt));
+    }
+
+    private Metrics.Resolution appendText(String txt, boolean caps, StringBuilder sb) {
+        txt = txt.toLowerCase();
+        List<String> vList = getVocab(txt);
+        if (vList != null) {
+            // word exists -- Append it
+            AppendWordQuery(vList, caps, sb);
+            return Metrics.Resolution.DIRECT;
+        }
+        // Plural or compound?
+        Morphology.Match match = morphology.analyze(txt);
+        if (match == null) {
+            invalidTerm(sb, caps, txt);
+            return Metrics.Resolution.UNKNOWN;
+        }
+        AppendWordQuery(match.getStem(), caps, sb);
+        if (!match.getRule().isPlural()) {
+            AppendWordQuery(match.getAffix(), caps, sb);
+            return Metrics.Resolution.AFFIX;
+        } else if (displayEnglish) {
+            sb.append(appendPjargPlural(sb.charAt(sb.length() - 1)));
+        } else {
+            sb.append(appendEngPlural(sb.substring(sb.length() - 2)));
+        }
+        return Metrics.Resolution.PLURAL;
+    }
+
+    private void invalidTerm(StringBuilder sb, boolean caps, String txt) {
+        // show word not found
+        sb.append("`");
+        if (!caps) {
+            sb.append(txt);
+        } else {
+            sb.append(stmtCase(txt));
+        }
+        sb.append("'");
+        if (suggestions != null) {
+            // Short words are within two edits of too many others
+            List<String> close = suggestions.suggest(txt, txt.length() > 4 ? 2 : 1, MAX_SUGGESTIONS);
+            if (!close.isEmpty()) {
+                sb.append(" (");
+                for (int i = 0; i < close.size(); ++i) {
+                    if (i > 0) {
+                        sb.append(", ");
+                    }
+                    sb.append(close.get(i));
+                }
+                sb.append("?)");
+            }
+        }
+    }
+
+    // Appends in place what List.toString would give for several words
+    private void AppendWordQuery(List<String> vList, boolean caps, StringBuilder sb) {
+        int size = vList.size();
+        if (size == 1) {
+            String word = vList.get(0);
+            sb.append(caps ? word : word.toLowerCase());
+            return;
+        }
+        sb.append('[');
+        for (int i = 0; i < size; ++i) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(vList.get(i));
+        }
+        sb.append(']');
+    }
+
+    static String stmtCase(String txt) {
+        if (txt == null || txt.length() == 0) {
+            return txt;
+        }
+        if (txt.length() > 1) {
+            return ("" + txt.charAt(0)).toUpperCase() + txt.substring(1);
+        } else {
+            return txt.toUpperCase();
+        }
+    }
+}
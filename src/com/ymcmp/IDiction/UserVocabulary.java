@@ -0,0 +1,523 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 plank.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ymcmp.IDiction;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Words added by the user, kept on disk across restarts.
+ *
+ * Every change is appended to a write-ahead log of checksummed records and
+ * synced before it becomes visible. Changes made while a sync is running are
+ * written together and synced once, so importing thousands of words takes a
+ * few syncs rather than one per word. When the log has more records than
+ * there are words, the words are compacted into an immutable segment sorted
+ * by key. The segment uses the {@link DictionaryCompiler} format. A new log
+ * is then started.
+ *
+ * Files are numbered by generation. {@code user-N.pjdc} holds every change
+ * from the logs before {@code N}. {@code user-N.log} holds the changes made
+ * after it. Opening reads the newest intact segment and replays every log
+ * from that generation on. A torn record at the end of the last log is
+ * dropped. Compaction starts the next log before writing the next segment,
+ * and deletes the old files last. A crash at any point therefore recovers
+ * every change that was synced.
+ *
+ * Only one process writes at a time. Others open the words read-only, as
+ * does {@link #openReadOnly(Path)}, which leaves the files as they are.
+ *
+ * @author plank
+ */
+public class UserVocabulary implements Closeable {
+
+    static final int MAGIC = 0x504A574C; // "PJWL"
+    static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    // Record: payload length, CRC32 of the payload, then the payload:
+    // operation, UTF-8 length of the key, key, value
+    private static final int RECORD_HEADER = 8;
+    private static final int PAYLOAD_HEADER = 5;
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    // Logs shorter than this are never worth compacting
+    private static final int COMPACT_RECORDS = 1024;
+    private static final Pattern FILE_NAME = Pattern.compile("user-(\\d+)\\.(pjdc|log)");
+
+    private static final class Change {
+
+        private final byte op;
+        private final Map.Entry<String, String> entry;
+
+        private Change(byte op, Map.Entry<String, String> entry) {
+            this.op = op;
+            this.entry = entry;
+        }
+    }
+
+    private final Path dir;
+    private final FileChannel lockFile;
+    private final ExecutorService writer;
+    // Owned by the writer thread once opened
+    private final Set<Map.Entry<String, String>> words = new LinkedHashSet<>();
+    private FileChannel log;
+    private long generation;
+    private int logRecords;
+    private volatile Dictionary<String, String> dictionary;
+
+    private final Object lock = new Object();
+    private List<Change> pending = new ArrayList<>();
+    private List<CompletableFuture<Void>> waiting = new ArrayList<>();
+    private boolean scheduled;
+
+    private UserVocabulary(Path dir, boolean writable) throws IOException {
+        this.dir = dir;
+        this.lockFile = writable ? lockDirectory(dir) : null;
+        try {
+            recover();
+        } catch (IOException | RuntimeException ex) {
+            close();
+            throw ex;
+        }
+        this.dictionary = snapshot(words);
+        this.writer = lockFile == null ? null : Executors.newSingleThreadExecutor((Runnable r) -> {
+            Thread t = new Thread(r, "user-vocabulary");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Opens the words kept in {@code dir}, creating it if needed, and
+     * recovers them from the last crash if there was one.
+     *
+     * @param dir
+     * @return the words, read-only if another process has them open
+     * @throws IOException
+     */
+    public static UserVocabulary open(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        return new UserVocabulary(dir, true);
+    }
+
+    /**
+     * Reads the words kept in {@code dir} without locking, creating or
+     * repairing any file, so other processes can still change them.
+     *
+     * @param dir
+     * @return the words as of now, empty if {@code dir} does not exist
+     * @throws IOException
+     */
+    public static UserVocabulary openReadOnly(Path dir) throws IOException {
+        return new UserVocabulary(dir, false);
+    }
+
+    /**
+     * @param english
+     * @param pjarg
+     * @return the pair cased the way the bundled vocabulary is, or
+     * {@code null} if either is blank
+     */
+    public static Map.Entry<String, String> word(String english, String pjarg) {
+        String key = english.trim().toLowerCase();
+        String value = pjarg.trim().toLowerCase();
+        if (key.isEmpty() || value.isEmpty()) {
+            return null;
+        }
+        return new SimpleImmutableEntry<>(key, Translator.stmtCase(value));
+    }
+
+    public Path getDirectory() {
+        return dir;
+    }
+
+    public boolean isReadOnly() {
+        return writer == null;
+    }
+
+    /**
+     * @return every word as of the last synced change; not modified
+     * afterwards
+     */
+    public Dictionary<String, String> getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @param entry
+     * @return completes once the word is on disk and in
+     * {@link #getDictionary()}
+     */
+    public CompletableFuture<Void> add(Map.Entry<String, String> entry) {
+        return submit(ADD, Collections.singletonList(entry));
+    }
+
+    /**
+     * Adds every entry in a single batch.
+     *
+     * @param entries
+     * @return completes once all of them are on disk and in
+     * {@link #getDictionary()}
+     */
+    public CompletableFuture<Void> addAll(Collection<? extends Map.Entry<String, String>> entries) {
+        return submit(ADD, entries);
+    }
+
+    /**
+     * @param entry a word added earlier; words in the bundled vocabulary
+     * cannot be removed
+     * @return completes once the removal is on disk and in
+     * {@link #getDictionary()}
+     */
+    public CompletableFuture<Void> remove(Map.Entry<String, String> entry) {
+        return submit(REMOVE, Collections.singletonList(entry));
+    }
+
+    /**
+     * Waits for pending changes to be written and releases the files.
+     */
+    @Override
+    public void close() {
+        if (writer != null) {
+            writer.shutdown();
+            try {
+                writer.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            if (log != null) {
+                log.close();
+            }
+            if (lockFile != null) {
+                lockFile.close();
+            }
+        } catch (IOException ex) {
+            System.err.println("Cannot close " + dir + ": " + ex.getMessage());
+        }
+    }
+
+    private CompletableFuture<Void> submit(byte op, Collection<? extends Map.Entry<String, String>> entries) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        if (writer == null) {
+            done.completeExceptionally(new IOException(dir + " is in use by another process"));
+            return done;
+        }
+        synchronized (lock) {
+            for (Map.Entry<String, String> entry : entries) {
+                pending.add(new Change(op, new SimpleImmutableEntry<>(entry.getKey(), entry.getValue())));
+            }
+            waiting.add(done);
+            // Anything submitted while this is queued or syncing joins the next batch
+            if (!scheduled) {
+                scheduled = true;
+                writer.execute(this::commit);
+            }
+        }
+        return done;
+    }
+
+    private void commit() {
+        List<Change> changes;
+        List<CompletableFuture<Void>> done;
+        synchronized (lock) {
+            changes = pending;
+            done = waiting;
+            pending = new ArrayList<>();
+            waiting = new ArrayList<>();
+            scheduled = false;
+        }
+        try {
+            append(changes);
+        } catch (IOException ex) {
+            done.forEach((future) -> future.completeExceptionally(ex));
+            return;
+        }
+        for (Change change : changes) {
+            apply(change.op, change.entry);
+        }
+        dictionary = snapshot(words);
+        done.forEach((future) -> future.complete(null));
+
+        if (logRecords > Math.max(COMPACT_RECORDS, words.size())) {
+            try {
+                compact();
+            } catch (IOException ex) {
+                // The logs still hold everything; try again after the next commit
+                System.err.println("Cannot compact " + dir + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    private void append(List<Change> changes) throws IOException {
+        int size = 0;
+        byte[][] keys = new byte[changes.size()][];
+        byte[][] values = new byte[changes.size()][];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = changes.get(i).entry.getKey().getBytes(StandardCharsets.UTF_8);
+            values[i] = changes.get(i).entry.getValue().getBytes(StandardCharsets.UTF_8);
+            size += RECORD_HEADER + PAYLOAD_HEADER + keys[i].length + values[i].length;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < keys.length; i++) {
+            int start = buf.position();
+            buf.position(start + RECORD_HEADER);
+            buf.put(changes.get(i).op).putInt(keys[i].length).put(keys[i]).put(values[i]);
+            int length = buf.position() - start - RECORD_HEADER;
+            crc.reset();
+            crc.update(buf.array(), start + RECORD_HEADER, length);
+            buf.putInt(start, length).putInt(start + 4, (int) crc.getValue());
+        }
+        buf.flip();
+
+        long end = log.position();
+        try {
+            while (buf.hasRemaining()) {
+                log.write(buf);
+            }
+            log.force(false);
+        } catch (IOException ex) {
+            // Cut off the partial batch so later batches do not land behind it
+            try {
+                log.truncate(end);
+                log.position(end);
+            } catch (IOException ignored) {
+            }
+            throw ex;
+        }
+        logRecords += changes.size();
+    }
+
+    private void apply(byte op, Map.Entry<String, String> entry) {
+        if (op == ADD) {
+            words.add(entry);
+        } else {
+            words.remove(entry);
+        }
+    }
+
+    private void compact() throws IOException {
+        long next = generation + 1;
+        FileChannel fresh = createLog(next);
+        log.close();
+        log = fresh;
+        generation = next;
+        logRecords = 0;
+        // Written aside and renamed into place, so it appears whole or not at all
+        DictionaryCompiler.compile(dictionary, segmentFile(next));
+        syncDirectory();
+        deleteBefore(next);
+    }
+
+    private void recover() throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        TreeMap<Long, Path> logs = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Matcher m = FILE_NAME.matcher(file.getFileName().toString());
+                if (m.matches()) {
+                    (m.group(2).equals("log") ? logs : segments).put(Long.parseLong(m.group(1)), file);
+                }
+            }
+        }
+
+        long base = -1;
+        for (Map.Entry<Long, Path> segment : segments.descendingMap().entrySet()) {
+            try {
+                MappedDictionary dict = MappedDictionary.open(segment.getValue());
+                if (dict.verify()) {
+                    words.addAll(dict.getRange(0, dict.size()));
+                    base = segment.getKey();
+                    break;
+                }
+                System.err.println("Ignoring damaged " + segment.getValue());
+            } catch (IOException ex) {
+                System.err.println("Ignoring " + segment.getValue() + ": " + ex.getMessage());
+            }
+        }
+
+        long end = HEADER_SIZE;
+        for (Map.Entry<Long, Path> entry : logs.tailMap(base, true).entrySet()) {
+            end = replay(entry.getValue());
+        }
+        generation = Math.max(Math.max(base, 0), logs.isEmpty() ? 0 : logs.lastKey());
+        if (lockFile == null) {
+            return;
+        }
+
+        if (logs.containsKey(generation)) {
+            log = FileChannel.open(logFile(generation), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (end < HEADER_SIZE) {
+                // Torn while it was being created
+                log.truncate(0);
+                log.write(header(), 0);
+                end = HEADER_SIZE;
+            }
+            log.truncate(end);
+            log.position(end);
+            log.force(false);
+        } else {
+            log = createLog(generation);
+        }
+        if (base >= 0) {
+            deleteBefore(base);
+        }
+    }
+
+    // Applies the intact records of a log and returns where they end
+    private long replay(Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        if (bytes.length < HEADER_SIZE || buf.getInt(0) != MAGIC) {
+            return 0;
+        }
+        if (buf.getInt(4) != VERSION) {
+            throw new IOException("Unsupported log version " + buf.getInt(4) + " in " + file);
+        }
+        CRC32 crc = new CRC32();
+        int pos = HEADER_SIZE;
+        while (bytes.length - pos >= RECORD_HEADER) {
+            int length = buf.getInt(pos);
+            int payload = pos + RECORD_HEADER;
+            if (length < PAYLOAD_HEADER || length > bytes.length - payload) {
+                break;
+            }
+            crc.reset();
+            crc.update(bytes, payload, length);
+            byte op = buf.get(payload);
+            int keyLength = buf.getInt(payload + 1);
+            if ((int) crc.getValue() != buf.getInt(pos + 4) || (op != ADD && op != REMOVE)
+                    || keyLength < 0 || keyLength > length - PAYLOAD_HEADER) {
+                break;
+            }
+            int key = payload + PAYLOAD_HEADER;
+            apply(op, new SimpleImmutableEntry<>(new String(bytes, key, keyLength, StandardCharsets.UTF_8),
+                    new String(bytes, key + keyLength, length - PAYLOAD_HEADER - keyLength, StandardCharsets.UTF_8)));
+            logRecords++;
+            pos = payload + length;
+        }
+        if (pos < bytes.length) {
+            System.err.println("Dropped " + (bytes.length - pos) + " torn bytes at the end of " + file);
+        }
+        return pos;
+    }
+
+    private FileChannel createLog(long gen) throws IOException {
+        FileChannel channel = FileChannel.open(logFile(gen), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.write(header());
+        channel.force(true);
+        syncDirectory();
+        return channel;
+    }
+
+    private void deleteBefore(long gen) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Matcher m = FILE_NAME.matcher(file.getFileName().toString());
+                if (m.matches() && Long.parseLong(m.group(1)) < gen) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException ex) {
+            // Still mapped on some systems; gone by the next start
+            System.err.println("Cannot delete old files in " + dir + ": " + ex.getMessage());
+        }
+    }
+
+    // Makes created and renamed files survive a power cut; not possible on every system
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ex) {
+            // Directories cannot be opened on Windows, which does not need it
+        }
+    }
+
+    private Path logFile(long gen) {
+        return dir.resolve("user-" + gen + ".log");
+    }
+
+    private Path segmentFile(long gen) {
+        return dir.resolve("user-" + gen + ".pjdc");
+    }
+
+    private static ByteBuffer header() {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE);
+        buf.putInt(MAGIC).putInt(VERSION).flip();
+        return buf;
+    }
+
+    // Held while open; null if another process holds it
+    private static FileChannel lockDirectory(Path dir) throws IOException {
+        FileChannel channel = FileChannel.open(dir.resolve("lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            FileLock lock = channel.tryLock();
+            if (lock != null) {
+                return channel;
+            }
+        } catch (OverlappingFileLockException ex) {
+            // Open elsewhere in this process
+        }
+        channel.close();
+        return null;
+    }
+
+    private static Dictionary<String, String> snapshot(Set<Map.Entry<String, String>> words) {
+        Dictionary<String, String> dict = new Dictionary<>();
+        dict.addAll(new ArrayList<>(words));
+        dict.trimToSize();
+        return dict;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 plank.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ymcmp.IDiction;
+
+import javax.swing.AbstractListModel;
+
+/**
+ * Read-only {@link javax.swing.ListModel} over a slice of a
+ * {@link PrefixIndex}. It copies nothing and never fires change events:
+ * showing another list or a narrower slice means installing another
+ * (constant time) model.
+ *
+ * @author plank
+ */
+public class WordListModel extends AbstractListModel<String> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final PrefixIndex index;
+    private final int from;
+    private final int to;
+
+    public WordListModel(PrefixIndex index) {
+        this(index, 0, index.size());
+    }
+
+    public WordListModel(PrefixIndex index, int from, int to) {
+        if (from < 0 || to > index.size() || from > to) {
+            throw new IndexOutOfBoundsException("Range: " + from + ".." + to + ", Size: " + index.size());
+        }
+        this.index = index;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * @param index
+     * @param prefix
+     * @return the words of {@code index} starting with {@code prefix}
+     */
+    public static WordListModel startingWith(PrefixIndex index, String prefix) {
+        int low = index.from(prefix);
+        return new WordListModel(index, low, Math.max(low, index.to(prefix)));
+    }
+
+    @Override
+    public int getSize() {
+        return to - from;
+    }
+
+    @Override
+    public String getElementAt(int i) {
+        return index.get(from + i);
+    }
+}